@@ -2,11 +2,15 @@ package io.codera.quant.observers;
 
 import com.ib.controller.Bar;
 import io.codera.quant.config.ContractBuilder;
+import java.time.Duration;
 import java.time.Instant;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDateTime;
+import org.lst.trading.lib.series.BarSeries;
 import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.Resampler;
+import org.lst.trading.lib.series.TimeSeries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
@@ -18,11 +22,14 @@ import rx.subjects.PublishSubject;
 public class IbHistoryObserver implements HistoryObserver {
   private static final Logger logger = LoggerFactory.getLogger(IbHistoryObserver.class);
   private final PublishSubject<DoubleSeries> priceSubject;
+  private final PublishSubject<BarSeries> barSubject;
   private DoubleSeries doubleSeries;
+  private BarSeries barSeries;
   private final String symbol;
 
   public IbHistoryObserver(String symbol) {
     priceSubject = PublishSubject.create();
+    barSubject = PublishSubject.create();
     this.symbol = symbol;
   }
 
@@ -30,6 +37,7 @@ public class IbHistoryObserver implements HistoryObserver {
   public void historicalData(Bar bar, boolean hasGaps) {
     if(doubleSeries == null) {
       doubleSeries = new DoubleSeries(this.symbol);
+      barSeries = new BarSeries(this.symbol, Duration.ofMinutes(1));
     }
 
     DateTime dt = new DateTime(bar.time() * 1000);
@@ -37,10 +45,20 @@ public class IbHistoryObserver implements HistoryObserver {
     if(dt.minuteOfDay().get() >= 390 && dt.minuteOfDay().get() <= 390 + 390) {
       logger.debug("{} {} {}", bar.formattedTime(), symbol, bar.close());
 
-      doubleSeries.add(
+      Instant instant = Instant.ofEpochMilli(new LocalDateTime(bar.time() * 1000).toDateTime(DateTimeZone.UTC)
+          .getMillis());
+      doubleSeries.add(ContractBuilder.getSymbolPrice(symbol, bar.close()), instant);
+      // inverted FX quotes swap high and low
+      double high = ContractBuilder.getSymbolPrice(symbol, bar.high());
+      double low = ContractBuilder.getSymbolPrice(symbol, bar.low());
+      barSeries.add(
+          ContractBuilder.getSymbolPrice(symbol, bar.open()),
+          Math.max(high, low),
+          Math.min(high, low),
           ContractBuilder.getSymbolPrice(symbol, bar.close()),
-          Instant.ofEpochMilli(new LocalDateTime(bar.time() * 1000).toDateTime(DateTimeZone.UTC)
-              .getMillis()));
+          bar.volume(),
+          ContractBuilder.getSymbolPrice(symbol, bar.wap()),
+          TimeSeries.toEpochNanos(instant));
     }
 
   }
@@ -48,6 +66,7 @@ public class IbHistoryObserver implements HistoryObserver {
   @Override
   public void historicalDataEnd() {
     priceSubject.onNext(doubleSeries);
+    barSubject.onNext(barSeries);
     logger.debug("End of historic data for " + symbol);
   }
 
@@ -55,4 +74,11 @@ public class IbHistoryObserver implements HistoryObserver {
     return priceSubject.asObservable();
   }
 
+  /**
+   * Full 1 minute bars of the same history, e.g. for {@link Resampler#resample(BarSeries, Duration)}.
+   */
+  public Observable<BarSeries> observableBarSeries() {
+    return barSubject.asObservable();
+  }
+
 }
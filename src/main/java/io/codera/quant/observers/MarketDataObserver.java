@@ -3,6 +3,11 @@ package io.codera.quant.observers;
 import com.ib.client.TickType;
 import com.ib.client.Types;
 import com.ib.controller.ApiController.ITopMktDataHandler;
+import java.time.Duration;
+import java.time.Instant;
+import org.lst.trading.lib.model.Bar;
+import org.lst.trading.lib.series.Resampler;
+import org.lst.trading.lib.series.TimeSeries;
 import rx.Observable;
 
 /**
@@ -13,6 +18,63 @@ public interface MarketDataObserver extends ITopMktDataHandler {
   String getSymbol();
   Observable<Price> priceObservable();
 
+  /**
+   * Aggregates prices of the given tick type into bars of the given period, timestamped on arrival. A bar is
+   * emitted when the first price of the next period arrives.
+   *
+   * @param tickType tick type to aggregate, e.g. {@link TickType#LAST}
+   * @param period bar size
+   * @return observable of completed bars
+   */
+  default Observable<Bar> barObservable(TickType tickType, Duration period) {
+    return Observable.create(subscriber -> {
+      Resampler resampler = new Resampler(period, (open, high, low, close, volume, wap, epochNanos) ->
+          subscriber.onNext(new Bar() {
+            @Override public double getOpen() {
+              return open;
+            }
+
+            @Override public double getHigh() {
+              return high;
+            }
+
+            @Override public double getLow() {
+              return low;
+            }
+
+            @Override public double getClose() {
+              return close;
+            }
+
+            @Override public long getVolume() {
+              return volume;
+            }
+
+            @Override public Instant getStart() {
+              return TimeSeries.ofEpochNanos(epochNanos);
+            }
+
+            @Override public Duration getDuration() {
+              return period;
+            }
+
+            @Override public double getWAP() {
+              return wap;
+            }
+          }));
+
+      subscriber.add(priceObservable()
+          .filter(price -> price.getTickType() == tickType)
+          .subscribe(
+              price -> resampler.add(price.getPrice(), 0, TimeSeries.toEpochNanos(Instant.now())),
+              subscriber::onError,
+              () -> {
+                resampler.flush();
+                subscriber.onCompleted();
+              }));
+    });
+  }
+
   @Override
   default void tickSize(TickType tickType, int size) {}
 
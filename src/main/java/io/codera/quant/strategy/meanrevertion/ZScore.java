@@ -2,138 +2,64 @@ package io.codera.quant.strategy.meanrevertion;
 
 import com.google.common.util.concurrent.AtomicDouble;
 import io.codera.quant.util.MathUtil;
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
- *
+ * Z-score of the spread between two instruments. The hedge ratio is the slope of a least squares regression (with
+ * intercept) of the second instrument's prices on the first instrument's over the last {@code lookback} prices; the
+ * spread {@code second - hedgeRatio * first} is scored against the mean and sample standard deviation of the last
+ * {@code lookback} spreads, each computed with the hedge ratio of its own tick.
+ * <p>
+ * Prices and spreads are kept in circular buffers together with their running means and centered second moments,
+ * which are updated as values enter and leave the window, so a tick costs O(1) and allocates nothing. The moments are
+ * recomputed from the buffers every {@code lookback} ticks to keep rounding errors from accumulating. The state is a
+ * single pair of a {@link ZScoreBank}.
  */
 public class ZScore {
 
-  private double[] firstSymbolHistory;
-  private double[] secondSymbolHistory;
-  private int lookback;
-  private int historyArraySize;
-  private MathUtil u;
+  private final ZScoreBank bank;
 
-  private double[] x;
-  private double[] y;
-  private double[] yPort;
-
-  private AtomicDouble lastCalculatedZScore;
-  private AtomicDouble lastCalculatedHedgeRatio;
-
-  private int historyIndex = 0;
+  private final AtomicDouble lastCalculatedZScore = new AtomicDouble(Double.NaN);
+  private final AtomicDouble lastCalculatedHedgeRatio = new AtomicDouble(Double.NaN);
 
+  /**
+   * Creates a z-score primed with {@code lookback * 2 - 1} prices of each instrument, oldest first, so the first
+   * {@link #get} call already returns a z-score.
+   */
   public ZScore(double[] firstSymbolHistory, double[] secondSymbolHistory, int lookback,
                 MathUtil utils) {
+    this(lookback, utils);
     checkArgument(firstSymbolHistory.length == lookback * 2 - 1, "firstSymbolHistory should be of" +
         " " + (lookback * 2 - 1) + " size");
     checkArgument(secondSymbolHistory.length == lookback * 2 - 1, "secondHistory should be of " +
         (lookback * 2 - 1) + " size");
 
-    this.firstSymbolHistory = firstSymbolHistory;
-    this.secondSymbolHistory = secondSymbolHistory;
-    this.lookback = lookback;
-    this.u = utils;
+    for(int i = 0; i < firstSymbolHistory.length; i++) {
+      bank.update(0, firstSymbolHistory[i], secondSymbolHistory[i]);
+    }
   }
 
+  /**
+   * Creates a z-score that returns 0 for the first {@code lookback * 2 - 1} prices.
+   */
   public ZScore(int lookback,
                 MathUtil utils) {
-    this.lookback = lookback;
-    this.historyArraySize = (lookback * 2 - 1);
-    this.u = utils;
-    firstSymbolHistory = new double[historyArraySize];
-    secondSymbolHistory = new double[historyArraySize];
+    bank = new ZScoreBank(lookback, new int[]{0}, new int[]{1});
   }
 
   public double get(double firstSymbolPrice, double secondSymbolPrice) {
     checkArgument(firstSymbolPrice > 0, "firstSymbolPrice can not be <= 0");
     checkArgument(secondSymbolPrice > 0, "secondSymbolPrice can not be <= 0");
 
-    if(firstSymbolHistory[firstSymbolHistory.length - 1] == 0 &&
-        secondSymbolHistory[secondSymbolHistory.length - 1] == 0) {
-      firstSymbolHistory[historyIndex] = firstSymbolPrice;
-      secondSymbolHistory[historyIndex] = secondSymbolPrice;
-      historyIndex++;
+    if(!bank.update(0, firstSymbolPrice, secondSymbolPrice)) {
       return 0.0;
     }
 
-    if(x == null && y == null && yPort == null) {
-      x = new double[lookback];
-      y = new double[lookback];
-      yPort = new double[lookback];
-
-      System.arraycopy(firstSymbolHistory, 0, x, 0, lookback - 1);
-      System.arraycopy(secondSymbolHistory, 0, y, 0, lookback - 1);
-
-      for(int i = lookback - 1; i < lookback * 2 - 1; i++) {
-        x[lookback - 1] = firstSymbolHistory[i];
-        y[lookback - 1] = secondSymbolHistory[i];
-
-        RealMatrix xMatrix = MatrixUtils.createRealMatrix(lookback, 2);
-        xMatrix.setColumn(0, x);
-        xMatrix.setColumn(1, u.ones(lookback));
-
-        OLSMultipleLinearRegression ols = new OLSMultipleLinearRegression(0);
-        ols.setNoIntercept(true);
-        ols.newSampleData(y, xMatrix.getData());
-
-        double hedgeRatio = ols.estimateRegressionParameters()[0];
-
-        double yP = (-hedgeRatio * x[lookback - 1]) + y[lookback - 1];
-        yPort[i + 1 - yPort.length] = yP;
-
-        System.arraycopy(x, 1, x, 0, lookback - 1);
-        System.arraycopy(y, 1, y, 0, lookback - 1);
-
-      }
-
-    }
-
-    System.arraycopy(yPort, 1, yPort, 0, lookback - 1);
-    x[lookback - 1] = firstSymbolPrice;
-    y[lookback - 1] = secondSymbolPrice;
-
-    RealMatrix xMatrix = MatrixUtils.createRealMatrix(lookback, 2);
-    xMatrix.setColumn(0, x);
-    xMatrix.setColumn(1, u.ones(lookback));
-
-    OLSMultipleLinearRegression ols = new OLSMultipleLinearRegression(0);
-    ols.setNoIntercept(true);
-    ols.newSampleData(y, xMatrix.getData());
-
-    double hedgeRatio = ols.estimateRegressionParameters()[0];
-
-    if(lastCalculatedHedgeRatio == null) {
-      lastCalculatedHedgeRatio = new AtomicDouble();
-    }
-
-    lastCalculatedHedgeRatio.set(hedgeRatio);
-
-    double yP = (-hedgeRatio * firstSymbolPrice) + secondSymbolPrice;
-    yPort[lookback - 1] = yP;
-
-    DescriptiveStatistics ds = new DescriptiveStatistics(yPort);
-
-    double movingAverage = ds.getMean();
-    double standardDeviation = ds.getStandardDeviation();
-
-    System.arraycopy(x, 1, x, 0, lookback - 1);
-    System.arraycopy(y, 1, y, 0, lookback - 1);
-
-    double zScore = (yPort[lookback - 1] - movingAverage)/standardDeviation;
-
-    if(lastCalculatedZScore == null) {
-      lastCalculatedZScore = new AtomicDouble();
-    }
-
+    double zScore = bank.getZScore(0);
+    lastCalculatedHedgeRatio.set(bank.getHedgeRatio(0));
     lastCalculatedZScore.set(zScore);
-    return lastCalculatedZScore.get();
+    return zScore;
   }
 
   public double getHedgeRatio() {
@@ -143,5 +69,4 @@ public class ZScore {
   public double getLastCalculatedZScore() {
     return lastCalculatedZScore.get();
   }
-
 }
@@ -0,0 +1,216 @@
+package io.codera.quant.strategy.meanrevertion;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.lst.trading.lib.util.ParallelRanges;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Rolling z-scores of many pairs, computed as {@link ZScore} does. Pair {@code p} regresses the price in column
+ * {@code secondColumns[p]} of the price vector on the price in column {@code firstColumns[p]}.
+ * <p>
+ * State is kept in structure of arrays layout: one array per running moment indexed by pair, and the price and
+ * spread windows stored slot-major ({@code slot * pairs + pair}), so a tick that updates every pair walks each array
+ * sequentially. {@link #update(double[])} allocates nothing; {@link #update(double[], ForkJoinPool)} splits the pairs
+ * into contiguous ranges updated in parallel.
+ * <pre>
+ * ZScoreBank bank = new ZScoreBank(20, firstColumns, secondColumns);
+ * bank.update(prices);
+ * double z = bank.getZScore(pair);
+ * </pre>
+ */
+public class ZScoreBank {
+  private final int lookback;
+  private final int pairs;
+  private final int[] firstColumns;
+  private final int[] secondColumns;
+
+  private final double[] x;
+  private final double[] y;
+  private final double[] spreads;
+  private final long[] counts;
+
+  private final double[] meanX;
+  private final double[] meanY;
+  private final double[] cxx;
+  private final double[] cxy;
+  private final double[] meanSpread;
+  private final double[] m2Spread;
+
+  private final double[] zScores;
+  private final double[] hedgeRatios;
+
+  public ZScoreBank(int lookback, int[] firstColumns, int[] secondColumns) {
+    checkArgument(lookback > 1, "lookback should be greater than 1");
+    checkArgument(firstColumns.length == secondColumns.length, "firstColumns and secondColumns differ in length");
+    this.lookback = lookback;
+    this.pairs = firstColumns.length;
+    this.firstColumns = firstColumns.clone();
+    this.secondColumns = secondColumns.clone();
+
+    x = new double[lookback * pairs];
+    y = new double[lookback * pairs];
+    spreads = new double[lookback * pairs];
+    counts = new long[pairs];
+    meanX = new double[pairs];
+    meanY = new double[pairs];
+    cxx = new double[pairs];
+    cxy = new double[pairs];
+    meanSpread = new double[pairs];
+    m2Spread = new double[pairs];
+    zScores = new double[pairs];
+    hedgeRatios = new double[pairs];
+    Arrays.fill(hedgeRatios, Double.NaN);
+  }
+
+  public int getPairs() {
+    return pairs;
+  }
+
+  public int getLookback() {
+    return lookback;
+  }
+
+  /**
+   * Updates every pair with the prices of the current tick.
+   */
+  public void update(double[] prices) {
+    update(prices, 0, pairs);
+  }
+
+  /**
+   * Updates every pair with the prices of the current tick, on {@code pool} when there are enough pairs to split.
+   */
+  public void update(double[] prices, ForkJoinPool pool) {
+    ParallelRanges.run(pool, pairs, (from, to) -> update(prices, from, to));
+  }
+
+  private void update(double[] prices, int from, int to) {
+    for(int p = from; p < to; p++) {
+      update(p, prices[firstColumns[p]], prices[secondColumns[p]]);
+    }
+  }
+
+  /**
+   * Updates a single pair with its two prices. Returns {@code true} once the pair has a z-score, i.e. from its
+   * {@code lookback * 2}-th price on.
+   */
+  public boolean update(int pair, double first, double second) {
+    long count = counts[pair];
+    int index = (int) (count % lookback) * pairs + pair;
+    int n = (int) Math.min(count, lookback);
+    if(n == lookback) {
+      // take the oldest prices out of the window
+      double dx = x[index] - meanX[pair];
+      meanX[pair] -= dx / (n - 1);
+      meanY[pair] -= (y[index] - meanY[pair]) / (n - 1);
+      cxx[pair] -= dx * (x[index] - meanX[pair]);
+      cxy[pair] -= dx * (y[index] - meanY[pair]);
+      n--;
+    }
+    x[index] = first;
+    y[index] = second;
+    n++;
+    double dx = first - meanX[pair];
+    meanX[pair] += dx / n;
+    meanY[pair] += (second - meanY[pair]) / n;
+    cxx[pair] += dx * (first - meanX[pair]);
+    cxy[pair] += dx * (second - meanY[pair]);
+    counts[pair] = ++count;
+
+    if(count % lookback == 0) {
+      resync(pair);
+    }
+    if(count < lookback) {
+      return false;
+    }
+
+    double hedgeRatio = cxy[pair] / cxx[pair];
+    double spread = second - hedgeRatio * first;
+    long spreadCount = count - lookback;
+    index = (int) (spreadCount % lookback) * pairs + pair;
+    n = (int) Math.min(spreadCount, lookback);
+    if(n == lookback) {
+      double delta = spreads[index] - meanSpread[pair];
+      meanSpread[pair] -= delta / (n - 1);
+      m2Spread[pair] -= delta * (spreads[index] - meanSpread[pair]);
+      n--;
+    }
+    spreads[index] = spread;
+    n++;
+    double delta = spread - meanSpread[pair];
+    meanSpread[pair] += delta / n;
+    m2Spread[pair] += delta * (spread - meanSpread[pair]);
+
+    if((spreadCount + 1) % lookback == 0) {
+      resyncSpreads(pair);
+    }
+    if(count < lookback * 2) {
+      return false;
+    }
+
+    hedgeRatios[pair] = hedgeRatio;
+    zScores[pair] = (spread - meanSpread[pair]) / Math.sqrt(m2Spread[pair] / (lookback - 1));
+    return true;
+  }
+
+  /**
+   * Z-score of {@code pair} after the last update, 0 until it has {@code lookback * 2} prices.
+   */
+  public double getZScore(int pair) {
+    return zScores[pair];
+  }
+
+  /**
+   * Hedge ratio of {@code pair} after the last update, NaN until it has a z-score.
+   */
+  public double getHedgeRatio(int pair) {
+    return hedgeRatios[pair];
+  }
+
+  public boolean isReady(int pair) {
+    return counts[pair] >= lookback * 2;
+  }
+
+  /**
+   * Recomputes the price moments of {@code pair} from its full price window, to keep rounding errors from
+   * accumulating.
+   */
+  private void resync(int pair) {
+    double sumX = 0;
+    double sumY = 0;
+    for(int i = pair; i < x.length; i += pairs) {
+      sumX += x[i];
+      sumY += y[i];
+    }
+    meanX[pair] = sumX / lookback;
+    meanY[pair] = sumY / lookback;
+    double sxx = 0;
+    double sxy = 0;
+    for(int i = pair; i < x.length; i += pairs) {
+      double dx = x[i] - meanX[pair];
+      sxx += dx * dx;
+      sxy += dx * (y[i] - meanY[pair]);
+    }
+    cxx[pair] = sxx;
+    cxy[pair] = sxy;
+  }
+
+  /**
+   * Recomputes the spread moments of {@code pair} from its full spread window.
+   */
+  private void resyncSpreads(int pair) {
+    double sum = 0;
+    for(int i = pair; i < spreads.length; i += pairs) {
+      sum += spreads[i];
+    }
+    meanSpread[pair] = sum / lookback;
+    double m2 = 0;
+    for(int i = pair; i < spreads.length; i += pairs) {
+      double delta = spreads[i] - meanSpread[pair];
+      m2 += delta * delta;
+    }
+    m2Spread[pair] = m2;
+  }
+}
@@ -13,6 +13,8 @@ public class ZScoreEntryCriterion implements Criterion {
   private final String firstSymbol;
   private final String secondSymbol;
   private ZScore zScore;
+  private ZScoreBank zScoreBank;
+  private int pair;
   private TradingContext tradingContext;
   private final double entryZScore;
 
@@ -25,12 +27,21 @@ public class ZScoreEntryCriterion implements Criterion {
     this.entryZScore = entryZScore;
   }
 
+  /**
+   * Reads the z-score of {@code pair} from {@code zScoreBank}, which has to be updated once per tick before the
+   * criterion is checked.
+   */
+  public ZScoreEntryCriterion(String firstSymbol, String secondSymbol, double entryZScore,
+                              ZScoreBank zScoreBank, int pair, TradingContext tradingContext) {
+    this(firstSymbol, secondSymbol, entryZScore, (ZScore) null, tradingContext);
+    this.zScoreBank = zScoreBank;
+    this.pair = pair;
+  }
+
   @Override
   public boolean isMet() throws CriterionViolationException {
     try {
-      double zs =
-          zScore.get(
-              tradingContext.getLastPrice(firstSymbol), tradingContext.getLastPrice(secondSymbol));
+      double zs = getZScore();
       if(zs < -entryZScore || zs > entryZScore) {
         return true;
       }
@@ -39,4 +50,12 @@ public class ZScoreEntryCriterion implements Criterion {
     }
     return false;
   }
+
+  private double getZScore() throws PriceNotAvailableException {
+    if(zScoreBank != null) {
+      return zScoreBank.getZScore(pair);
+    }
+    return zScore.get(
+        tradingContext.getLastPrice(firstSymbol), tradingContext.getLastPrice(secondSymbol));
+  }
 }
@@ -14,6 +14,8 @@ public class ZScoreExitCriterion implements Criterion {
   private final String firstSymbol;
   private final String secondSymbol;
   private ZScore zScore;
+  private ZScoreBank zScoreBank;
+  private int pair;
   private TradingContext tradingContext;
   private double exitZScore;
 
@@ -31,12 +33,21 @@ public class ZScoreExitCriterion implements Criterion {
     this.exitZScore = exitZScore;
   }
 
+  /**
+   * Reads the z-score of {@code pair} from {@code zScoreBank}, which has to be updated once per tick before the
+   * criterion is checked.
+   */
+  public ZScoreExitCriterion(String firstSymbol, String secondSymbol, double exitZScore,
+                             ZScoreBank zScoreBank, int pair, TradingContext tradingContext) {
+    this(firstSymbol, secondSymbol, exitZScore, (ZScore) null, tradingContext);
+    this.zScoreBank = zScoreBank;
+    this.pair = pair;
+  }
+
   @Override
   public boolean isMet() throws CriterionViolationException {
     try {
-      double zs =
-          zScore.get(
-              tradingContext.getLastPrice(firstSymbol), tradingContext.getLastPrice(secondSymbol));
+      double zs = getZScore();
       if(tradingContext.getLastOrderBySymbol(firstSymbol).isShort() && zs < exitZScore ||
           tradingContext.getLastOrderBySymbol(firstSymbol).isLong() && zs > exitZScore) {
         return true;
@@ -49,4 +60,12 @@ public class ZScoreExitCriterion implements Criterion {
     }
     return false;
   }
+
+  private double getZScore() throws PriceNotAvailableException {
+    if(zScoreBank != null) {
+      return zScoreBank.getZScore(pair);
+    }
+    return zScore.get(
+        tradingContext.getLastPrice(firstSymbol), tradingContext.getLastPrice(secondSymbol));
+  }
 }
@@ -25,6 +25,7 @@ import org.joda.time.DurationFieldType;
 import org.joda.time.LocalDate;
 import org.lst.trading.lib.series.DoubleSeries;
 import org.lst.trading.lib.series.MultipleDoubleSeries;
+import org.lst.trading.lib.series.TimeSeries.JoinType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
@@ -107,7 +108,18 @@ public class Helper {
 
     }
 
-    return new MultipleDoubleSeries(doubleSeries);
+    // Minute bars of different symbols rarely line up exactly, carry the last price forward instead of
+    // dropping every minute one of them did not trade.
+    MultipleDoubleSeries history = new MultipleDoubleSeries(doubleSeries, JoinType.FULL_OUTER_FORWARD_FILL);
+
+    // Strategies need a price of every symbol, start at the first bar all of them have traded.
+    int start = 0;
+    for(int column = 0; column < symbols.size(); column++) {
+      while(start < history.size() && Double.isNaN(history.getValue(start, column))) {
+        start++;
+      }
+    }
+    return history.window(start, history.size() - start);
   }
 
 
@@ -1,15 +1,19 @@
 package org.lst.trading.lib.backtest;
 
 import io.codera.quant.strategy.Strategy;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.lst.trading.lib.model.ClosedOrder;
 import org.lst.trading.lib.series.DoubleSeries;
 import org.lst.trading.lib.series.MultipleDoubleSeries;
-import org.lst.trading.lib.series.TimeSeries;
-import org.lst.trading.lib.util.Statistics;
+import org.lst.trading.lib.util.RunningStatistics;
 
 import static org.lst.trading.lib.util.Util.check;
 
@@ -23,6 +27,7 @@ public class BackTest {
     double mInitialFund;
     double mFinalValue;
     double mCommissions;
+    RunningStatistics mStatistics;
 
     public Result(double pl, DoubleSeries plHistory, DoubleSeries marginHistory, List<ClosedOrder> orders, double initialFund, double finalValue, double commisions) {
       mPl = pl;
@@ -59,15 +64,34 @@ public class BackTest {
     }
 
     public double getSharpe() {
-      return Statistics.sharpe(Statistics.returns(getAccountValueHistory().toArray()));
+      return getStatistics().getSharpe();
     }
 
     public double getMaxDrawdown() {
-      return Statistics.drawdown(getAccountValueHistory().toArray())[0];
+      return getStatistics().getMaxDrawdown();
     }
 
     public double getMaxDrawdownPercent() {
-      return Statistics.drawdown(getAccountValueHistory().toArray())[1];
+      return getStatistics().getMaxDrawdownPercent();
+    }
+
+    /**
+     * Statistics of the account value history and the closed orders. Backtests keep them up to date while running;
+     * for results assembled from histories they are computed once on first access.
+     */
+    public RunningStatistics getStatistics() {
+      if (mStatistics == null) {
+        RunningStatistics statistics = new RunningStatistics();
+        DoubleSeries pl = getPlHistory();
+        for (int i = 0; i < pl.size(); i++) {
+          statistics.add(mInitialFund + pl.getValue(i));
+        }
+        for (ClosedOrder order : getOrders()) {
+          statistics.addTrade(order.getPl());
+        }
+        mStatistics = statistics;
+      }
+      return mStatistics;
     }
 
     public int getDaysCount() {
@@ -98,9 +122,18 @@ public class BackTest {
   Strategy mStrategy;
   BackTestTradingContext mContext;
 
-  Iterator<TimeSeries.Entry<List<Double>>> mPriceIterator;
+  int mRow;
   Result mResult;
 
+  Path mSpillDirectory;
+  Path mCheckpointFile;
+  int mCheckpointInterval;
+  ExecutorService mCheckpointWriter;
+  Future<?> mPendingCheckpoint;
+  int mCheckpointedRows;
+  int mCheckpointedOrders;
+  long mCheckpointHistoryLength;
+
   public BackTest(double deposit, MultipleDoubleSeries priceSeries) {
     check(priceSeries.isAscending());
     mDeposit = deposit;
@@ -115,45 +148,161 @@ public class BackTest {
     return mLeverage;
   }
 
+  /**
+   * Writes a {@link Checkpoint} to {@code file} every {@code interval} bars. The state is captured on the backtest
+   * thread and written by a background thread; if the previous checkpoint is still being written when the next one
+   * is due, that one is skipped rather than waited for. Strategies implementing {@link Checkpointable} have their
+   * state saved as well. The histories and closed orders are appended to {@code file.history}, which must be kept
+   * along with {@code file}.
+   */
+  public void setCheckpoint(Path file, int interval) {
+    check(interval > 0);
+    mCheckpointFile = file;
+    mCheckpointInterval = interval;
+  }
+
+  /**
+   * Streams the P/L and funds histories and the closed orders to files in {@code directory} while the backtest runs,
+   * instead of keeping them on the heap. The returned {@link Result} computes its Sharpe ratio and drawdown from
+   * running aggregates and maps the files only when a history or the orders are requested. The files are left in
+   * {@code directory} for the caller to remove; if the run fails, they are deleted.
+   */
+  public void setSpillDirectory(Path directory) {
+    mSpillDirectory = directory;
+  }
+
   public Result run(Strategy strategy) {
     initialize(strategy);
     while (nextStep()) ;
     return mResult;
   }
 
+  /**
+   * Continues an interrupted {@link #run(Strategy)} from the checkpoint in {@code file}. The backtest must be set up
+   * with the same price series, deposit and leverage, and {@code strategy} must be freshly created with a new
+   * {@link BackTestTradingContext}.
+   */
+  public Result resume(Path file, Strategy strategy) throws IOException {
+    Checkpoint checkpoint = Checkpoint.read(file);
+    prepare(strategy);
+    checkpoint.restore(this);
+    if (!file.equals(mCheckpointFile)) {
+      // a new checkpoint file starts its history from the first bar
+      mCheckpointedRows = 0;
+      mCheckpointedOrders = 0;
+      mCheckpointHistoryLength = 0;
+    }
+    while (nextStep()) ;
+    return mResult;
+  }
+
   public void initialize(Strategy strategy) {
+    prepare(strategy);
+    mRow = 0;
+    nextStep();
+  }
+
+  private void prepare(Strategy strategy) {
     mStrategy = strategy;
+    mCheckpointedRows = 0;
+    mCheckpointedOrders = 0;
+    mCheckpointHistoryLength = 0;
     mContext = (BackTestTradingContext) strategy.getTradingContext();
 
-    mContext.mInstruments = mPriceSeries.getNames();
-    mContext.mHistory = new MultipleDoubleSeries(mContext.mInstruments);
+    if (mSpillDirectory != null) {
+      check(mCheckpointFile == null, "Checkpoints are not supported together with a spill directory");
+      try {
+        mContext.mSpill = new ResultSpill(mSpillDirectory, mPriceSeries.getNames(), mDeposit);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    mContext.initialize(mPriceSeries);
     mContext.mInitialFunds = mDeposit;
     mContext.mLeverage = mLeverage;
 
-    mPriceIterator = mPriceSeries.iterator();
-    nextStep();
+    if (mCheckpointFile != null && mCheckpointWriter == null) {
+      mCheckpointWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "backtest-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
   }
 
+  /**
+   * Runs the next bar. Returns {@code false} once the run has finished. If the bar fails, the spill files of the run
+   * are closed and deleted and the checkpoint being written is waited for before the exception is rethrown.
+   */
   public boolean nextStep() {
-    if (!mPriceIterator.hasNext()) {
+    try {
+      return step();
+    } catch (RuntimeException | Error e) {
+      abortSpill(e);
+      stopCheckpointWriter(e);
+      throw e;
+    }
+  }
+
+  private void abortSpill(Throwable failure) {
+    ResultSpill spill = mContext.mSpill;
+    if (spill == null) {
+      return;
+    }
+    mContext.mSpill = null;
+    try {
+      spill.abort();
+    } catch (IOException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  /**
+   * Waits for the pending checkpoint, so the failed run can be resumed from it, and stops the writer thread. A write
+   * failure is attached to {@code failure}.
+   */
+  private void stopCheckpointWriter(Throwable failure) {
+    if (mCheckpointWriter == null) {
+      return;
+    }
+    try {
+      awaitCheckpoint();
+    } catch (RuntimeException e) {
+      failure.addSuppressed(e);
+    } finally {
+      mCheckpointWriter.shutdown();
+      mCheckpointWriter = null;
+    }
+  }
+
+  private boolean step() {
+    if (mRow >= mPriceSeries.size()) {
       finish();
       return false;
     }
 
-    TimeSeries.Entry<List<Double>> entry = mPriceIterator.next();
-
-    mContext.mPrices = entry.getItem();
-    mContext.mInstant = entry.getInstant();
-    mContext.mPl.add(mContext.getPl(), entry.getInstant());
-    mContext.mFundsHistory.add(mContext.getAvailableFunds(), entry.getInstant());
-    if (mContext.getAvailableFunds() < 0) {
+    long time = mPriceSeries.getEpochNanos(mRow);
+
+    mContext.setRow(mRow++, time);
+    double funds = mContext.getAvailableFunds();
+    double pl = mContext.getPl();
+    mContext.mStatistics.add(mDeposit + pl);
+    if (mContext.mSpill != null) {
+      mContext.mSpill.addEquity(time, pl, funds);
+    } else {
+      mContext.mPl.add(pl, time);
+      mContext.mFundsHistory.add(funds, time);
+    }
+    if (funds < 0) {
       finish();
       return false;
     }
 
     mStrategy.onTick();
 
-    mContext.mHistory.add(entry);
+    if (mCheckpointFile != null && mRow % mCheckpointInterval == 0) {
+      checkpoint();
+    }
 
     return true;
   }
@@ -163,14 +312,73 @@ public class BackTest {
   }
 
   private void finish() {
-    for (SimpleOrder order : new ArrayList<>(mContext.mOrders)) {
-      mContext.close(order);
-    }
-
     // TODO (replace below code with BackTest results implementation
 //        mStrategy.onEnd();
 
-    List<ClosedOrder> orders = Collections.unmodifiableList(mContext.mClosedOrders);
-    mResult = new Result(mContext.mClosedPl, mContext.mPl, mContext.mFundsHistory, orders, mDeposit, mDeposit + mContext.mClosedPl, mContext.mCommissions);
+    mResult = finish(mContext, mDeposit);
+
+    if (mCheckpointWriter != null) {
+      awaitCheckpoint();
+      mCheckpointWriter.shutdown();
+      mCheckpointWriter = null;
+    }
+  }
+
+  private void checkpoint() {
+    if (mPendingCheckpoint != null) {
+      if (!mPendingCheckpoint.isDone()) {
+        return;
+      }
+      awaitCheckpoint();
+    }
+
+    Checkpoint checkpoint;
+    try {
+      checkpoint = Checkpoint.capture(this);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Path file = mCheckpointFile;
+    mPendingCheckpoint = mCheckpointWriter.submit(() -> {
+      // only ever touched by the writer thread once the run has started
+      mCheckpointHistoryLength = checkpoint.write(file, mCheckpointHistoryLength);
+      return null;
+    });
+  }
+
+  private void awaitCheckpoint() {
+    if (mPendingCheckpoint == null) {
+      return;
+    }
+    try {
+      mPendingCheckpoint.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Could not write checkpoint to " + mCheckpointFile, e.getCause());
+    } finally {
+      mPendingCheckpoint = null;
+    }
+  }
+
+  /**
+   * Closes the open orders of {@code context} at the current prices, see {@link BackTestTradingContext#closeAll()},
+   * and returns its result.
+   */
+  static Result finish(BackTestTradingContext context, double deposit) {
+    context.closeAll();
+
+    if (context.mSpill != null) {
+      try {
+        return context.mSpill.finish(context.mClosedPl, context.mCommissions, context.mStatistics);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    List<ClosedOrder> orders = Collections.unmodifiableList(context.mClosedOrders);
+    Result result = new Result(context.mClosedPl, context.mPl, context.mFundsHistory, orders, deposit, deposit + context.mClosedPl, context.mCommissions);
+    result.mStatistics = context.mStatistics;
+    return result;
   }
 }
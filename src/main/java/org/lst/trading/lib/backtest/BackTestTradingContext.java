@@ -1,41 +1,58 @@
 package org.lst.trading.lib.backtest;
 
 import com.google.common.collect.Maps;
+import io.codera.quant.config.ContractBuilder;
 import io.codera.quant.context.TradingContext;
 import io.codera.quant.exception.NoOrderAvailable;
 import io.codera.quant.exception.PriceNotAvailableException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
 import java.util.stream.Stream;
 import org.lst.trading.lib.model.ClosedOrder;
 import org.lst.trading.lib.model.Order;
 import org.lst.trading.lib.series.DoubleSeries;
 import org.lst.trading.lib.series.MultipleDoubleSeries;
 import org.lst.trading.lib.series.TimeSeries;
+import org.lst.trading.lib.util.RunningStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.lst.trading.lib.util.Util.check;
 
+/**
+ * Backtest {@link TradingContext}. Instruments are addressed by integer id internally; open positions are kept as
+ * per-instrument exposure so P/L and margin are updated incrementally on order and close, and evaluating them on a
+ * tick is a dot product with the current price vector that allocates nothing.
+ */
 public class BackTestTradingContext implements TradingContext {
+  private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+  private static final long NANOS_PER_DAY = 24 * 60 * NANOS_PER_MINUTE;
+  private static final long CLOSE_MINUTE_OF_DAY = 13 * 60;
+
+  long mTime;
   Instant mInstant;
-  List<Double> mPrices;
+  MultipleDoubleSeries mPriceSeries;
+  int mRow;
   List<String> mInstruments;
+  Map<String, Integer> mInstrumentIds;
+  double[] mPrices;
+  double[] mExposures;
+  double[] mClosePrices;
   DoubleSeries mPl = new DoubleSeries("pl");
   DoubleSeries mFundsHistory = new DoubleSeries("funds");
-  MultipleDoubleSeries mHistory;
   double mInitialFunds;
   double mCommissions;
-  private Map<String, Order> orders;
-  private Map<String, Double> closePriceMap = Maps.newConcurrentMap();
+  double mOpenCost;
+  double mMargin;
+  Map<String, Order> orders;
 
   int mOrderId = 1;
 
@@ -43,30 +60,99 @@ public class BackTestTradingContext implements TradingContext {
 
   double mClosedPl = 0;
   List<SimpleClosedOrder> mClosedOrders = new ArrayList<>();
+  ResultSpill mSpill;
+  RunningStatistics mStatistics = new RunningStatistics();
   double mLeverage;
+  FillModel mFillModel = FillModel.IMMEDIATE;
+  int mFillLatency;
+  ArrayDeque<PendingFill> mPendingFills = new ArrayDeque<>();
   private static Logger logger = LoggerFactory.getLogger(BackTestTradingContext.class);
 
+  void initialize(MultipleDoubleSeries priceSeries) {
+    mPriceSeries = priceSeries;
+    mInstruments = priceSeries.getNames();
+    mInstrumentIds = new HashMap<>();
+    for (int i = 0; i < mInstruments.size(); i++) {
+      mInstrumentIds.put(mInstruments.get(i), i);
+    }
+    mPrices = new double[mInstruments.size()];
+    mExposures = new double[mInstruments.size()];
+    mClosePrices = new double[mInstruments.size()];
+    Arrays.fill(mClosePrices, Double.NaN);
+    mPendingFills.clear();
+    mStatistics.reset();
+    mFillModel.initialize(priceSeries);
+    if (mSpill == null) {
+      mPl = new DoubleSeries("pl", priceSeries.size());
+      mFundsHistory = new DoubleSeries("funds", priceSeries.size());
+    }
+  }
+
+  void setRow(int row, long time) {
+    for (int i = 0; i < mPrices.length; i++) {
+      mPrices[i] = mPriceSeries.getValue(row, i);
+    }
+    setTime(row, time);
+  }
+
+  /**
+   * Moves to {@code row} without loading its prices, for contexts whose price vector is filled by the caller. At the
+   * 13:00 bar the prices are recorded as close prices for {@link #getChangeBySymbol}. Fills due at the row are booked
+   * at its prices.
+   */
+  void setTime(int row, long time) {
+    mRow = row;
+    mTime = time;
+    mInstant = null;
+    if (Math.floorMod(time, NANOS_PER_DAY) / NANOS_PER_MINUTE == CLOSE_MINUTE_OF_DAY) {
+      System.arraycopy(mPrices, 0, mClosePrices, 0, mPrices.length);
+    }
+    fillPending();
+  }
+
+  /**
+   * Sets how orders and closes are filled, {@link FillModel#IMMEDIATE} by default.
+   */
+  public void setFillModel(FillModel fillModel) {
+    checkArgument(fillModel != null, "fillModel is null");
+    mFillModel = fillModel;
+  }
+
+  /**
+   * Fills orders and closes at the price {@code bars} bars after they are placed. Nothing is booked until then: the
+   * position, its cost, margin and commission count from the fill bar on, and a close realizes its P/L there. Fills
+   * still pending when the series ends are handled by {@link #closeAll()}.
+   */
+  public void setFillLatency(int bars) {
+    checkArgument(bars >= 0, "bars must not be negative");
+    mFillLatency = bars;
+  }
+
   @Override public Instant getTime() {
+    if (mInstant == null) {
+      mInstant = TimeSeries.ofEpochNanos(mTime);
+    }
     return mInstant;
   }
 
-  @Override public double getLastPrice(String instrument) {
-    logger.info("Time: {}", mInstant.toString());
-    
-    Date date = Date.from(mInstant);
-    SimpleDateFormat hourMinutes = new SimpleDateFormat("HH:mm");
-    hourMinutes.setTimeZone(TimeZone.getTimeZone("UTC"));
-    String formattedHourMinutes = hourMinutes.format(date);
-    double price = mPrices.get(mInstruments.indexOf(instrument));
-    if(formattedHourMinutes.equals("13:00")) {
-      closePriceMap.put(instrument, price);
+  public int getInstrumentId(String instrument) {
+    Integer id = mInstrumentIds.get(instrument);
+    if (id == null) {
+      throw new IllegalArgumentException("Unknown instrument " + instrument);
     }
-    return price;
+    return id;
+  }
+
+  @Override public double getLastPrice(String instrument) {
+    return getLastPrice(getInstrumentId(instrument));
+  }
+
+  public double getLastPrice(int instrumentId) {
+    return mPrices[instrumentId];
   }
 
   @Override public Stream<TimeSeries.Entry<Double>> getHistory(String instrument) {
-    int index = mInstruments.indexOf(instrument);
-    return mHistory.reversedStream().map(t -> new TimeSeries.Entry<>(t.getItem().get(index), t.getInstant()));
+    return mPriceSeries.getColumn(instrument).head(mRow).reversedStream();
   }
 
   @Override
@@ -84,32 +170,55 @@ public class BackTestTradingContext implements TradingContext {
     return mInstruments;
   }
 
+  /**
+   * Opens a position of the part of {@code amount} the fill model fills. Returns {@code null} if none of it fills,
+   * in which case nothing is booked.
+   * <p>
+   * With a fill latency the order is returned right away with the requested amount and a {@code NaN} open price,
+   * which are set when it fills. If none of it fills then, {@link #getLastOrderBySymbol} no longer returns it.
+   */
   @Override public Order order(String instrument, boolean buy, int amount) {
 //    check(amount > 0);
     logger.info("OPEN {} in amount {}", instrument, (buy ? 1 : -1) * amount);
-    double price = getLastPrice(instrument);
-    SimpleOrder order = new SimpleOrder(mOrderId++, instrument, getTime(), price, amount * (buy ? 1 : -1));
-    mOrders.add(order);
+    int id = getInstrumentId(instrument);
+    SimpleOrder order;
+    if (mFillLatency > 0) {
+      order = new SimpleOrder(mOrderId++, instrument, getTime(), Double.NaN, amount * (buy ? 1 : -1));
+      order.mInstrumentId = id;
+      mPendingFills.add(new PendingFill(mRow + mFillLatency, order, null));
+    } else {
+      int filled = mFillModel.fillAmount(id, mRow, amount * (buy ? 1 : -1));
+      if (filled == 0) {
+        logger.info("OPEN {} did not fill", instrument);
+        return null;
+      }
+      double price = mFillModel.fillPrice(id, mRow, filled, mPrices[id]);
+      order = new SimpleOrder(mOrderId++, instrument, getTime(), price, filled);
+      order.mInstrumentId = id;
+      book(order);
+    }
     if(orders == null) {
       orders = Maps.newConcurrentMap();
     }
     orders.put(instrument, order);
 
-    mCommissions += calculateCommission(order);
-
     return order;
   }
 
+  /**
+   * Closes {@code order} in full; the fill model prices the close but does not limit its amount. With a fill latency
+   * the returned order gets its close price, instant and P/L when the close fills. Orders that are not open by then,
+   * e.g. because nothing of them filled, are not closed.
+   */
   @Override public ClosedOrder close(Order order) {
     logger.info("CLOSE {} in amount {}", order.getInstrument(), -order.getAmount());
 
-    SimpleOrder simpleOrder = (SimpleOrder) order;
-    mOrders.remove(simpleOrder);
-    double price = getLastPrice(order.getInstrument());
-    SimpleClosedOrder closedOrder = new SimpleClosedOrder(simpleOrder, price, getTime());
-    mClosedOrders.add(closedOrder);
-    mClosedPl += closedOrder.getPl();
-    mCommissions += calculateCommission(order);
+    SimpleClosedOrder closedOrder = new SimpleClosedOrder((SimpleOrder) order, Double.NaN, getTime());
+    if (mFillLatency > 0) {
+      mPendingFills.add(new PendingFill(mRow + mFillLatency, closedOrder.mOrder, closedOrder));
+    } else {
+      fill(closedOrder);
+    }
     if(orders != null) {
       orders.remove(order.getInstrument());
     }
@@ -117,6 +226,97 @@ public class BackTestTradingContext implements TradingContext {
     return closedOrder;
   }
 
+  /**
+   * Fills the orders and closes due at the current bar.
+   */
+  private void fillPending() {
+    while (!mPendingFills.isEmpty() && mPendingFills.peek().mRow <= mRow) {
+      PendingFill pending = mPendingFills.poll();
+      if (pending.mClose != null) {
+        fill(pending.mClose);
+      } else {
+        fill(pending.mOrder);
+      }
+    }
+  }
+
+  private void fill(SimpleOrder order) {
+    int id = order.mInstrumentId;
+    order.mAmount = mFillModel.fillAmount(id, mRow, order.mAmount);
+    if (order.mAmount == 0) {
+      logger.info("OPEN {} did not fill", order.mInstrument);
+      if (orders != null) {
+        orders.remove(order.mInstrument, order);
+      }
+      return;
+    }
+    order.mOpenPrice = mFillModel.fillPrice(id, mRow, order.mAmount, mPrices[id]);
+    order.mOpenInstant = getTime();
+    book(order);
+  }
+
+  private void book(SimpleOrder order) {
+    int id = order.mInstrumentId;
+    mOrders.add(order);
+    double exposure = order.getAmount() * multiplier(order.getInstrument());
+    mExposures[id] += exposure;
+    mOpenCost += exposure * order.getOpenPrice();
+    mMargin += Math.abs(order.getAmount()) * order.getOpenPrice() / mLeverage;
+    mCommissions += calculateCommission(order);
+  }
+
+  private void fill(SimpleClosedOrder closedOrder) {
+    SimpleOrder order = closedOrder.mOrder;
+    if (!mOrders.remove(order)) {
+      return;
+    }
+    int id = order.mInstrumentId;
+    closedOrder.mClosePrice = mFillModel.fillPrice(id, mRow, -order.getAmount(), mPrices[id]);
+    closedOrder.mCloseInstant = getTime();
+    closedOrder.mPl = closedOrder.calculatePl(closedOrder.mClosePrice);
+    if (mSpill != null) {
+      mSpill.addClosedOrder(closedOrder);
+    } else {
+      mClosedOrders.add(closedOrder);
+    }
+    mClosedPl += closedOrder.getPl();
+    mStatistics.addTrade(closedOrder.getPl());
+
+    double exposure = order.getAmount() * multiplier(order.getInstrument());
+    mExposures[id] -= exposure;
+    mOpenCost -= exposure * order.getOpenPrice();
+    mMargin -= Math.abs(order.getAmount()) * order.getOpenPrice() / mLeverage;
+    if (mOrders.isEmpty()) {
+      // drop accumulated rounding once flat
+      Arrays.fill(mExposures, 0);
+      mOpenCost = 0;
+      mMargin = 0;
+    }
+
+    mCommissions += calculateCommission(order);
+  }
+
+  /**
+   * Ends the run at the current bar: closes that are still pending fill now, orders that are still pending are
+   * dropped, and the open orders are closed at the current prices.
+   */
+  void closeAll() {
+    for (PendingFill pending : mPendingFills) {
+      if (pending.mClose != null) {
+        fill(pending.mClose);
+      } else if (orders != null) {
+        orders.remove(pending.mOrder.mInstrument, pending.mOrder);
+      }
+    }
+    mPendingFills.clear();
+    for (SimpleOrder order : new ArrayList<>(mOrders)) {
+      fill(new SimpleClosedOrder(order, Double.NaN, getTime()));
+      if(orders != null) {
+        orders.remove(order.getInstrument());
+      }
+    }
+  }
+
   @Override
   public Order getLastOrderBySymbol(String symbol) throws NoOrderAvailable {
     checkArgument(symbol != null, "symbol is null");
@@ -127,12 +327,25 @@ public class BackTestTradingContext implements TradingContext {
   }
 
   public double getPl() {
-    return mClosedPl + mOrders.stream().mapToDouble(t -> t.calculatePl(getLastPrice(t.getInstrument()))).sum() - mCommissions;
+    double value = 0;
+    for (int i = 0; i < mExposures.length; i++) {
+      if (mExposures[i] != 0) {
+        value += mExposures[i] * mPrices[i];
+      }
+    }
+    return mClosedPl + value - mOpenCost - mCommissions;
   }
 
 
   @Override public double getAvailableFunds() {
-    return getNetValue() - mOrders.stream().mapToDouble(t -> Math.abs(t.getAmount()) * t.getOpenPrice() / mLeverage).sum();
+    return getNetValue() - mMargin;
+  }
+
+  /**
+   * Running statistics of the account value after each bar and of the closed orders so far.
+   */
+  public RunningStatistics getStatistics() {
+    return mStatistics;
   }
 
   public double getInitialFunds() {
@@ -147,25 +360,41 @@ public class BackTestTradingContext implements TradingContext {
     return mLeverage;
   }
 
+  static double multiplier(String instrument) {
+    return instrument.contains("=F") ? ContractBuilder.getFutureMultiplier(instrument) : 1;
+  }
+
   double calculateCommission(Order order) {
-    if(order.getInstrument().contains("/")) {
-      return Math.abs(order.getAmount()) * order.getOpenPrice() * 0.00002;
-    }
-    else if(order.getInstrument().contains("=F")) {
-      return Math.abs(order.getAmount()) * 2.04;
-    }
-    double commissions = Math.max(1,  Math.abs(order.getAmount()) * 0.005);
+    double commissions = commission(order.getInstrument(), order.getAmount(), order.getOpenPrice());
     logger.debug("Commissions: {}", commissions);
     return commissions;
   }
 
+  /**
+   * Commission for opening or closing {@code amount} of {@code instrument} that was opened at {@code openPrice}, none
+   * for an order that did not fill.
+   */
+  static double commission(String instrument, int amount, double openPrice) {
+    if (amount == 0) {
+      return 0;
+    }
+    if(instrument.contains("/")) {
+      return Math.abs(amount) * openPrice * 0.00002;
+    }
+    else if(instrument.contains("=F")) {
+      return Math.abs(amount) * 2.04;
+    }
+    return Math.max(1,  Math.abs(amount) * 0.005);
+  }
+
   public double getChangeBySymbol(String symbol) throws PriceNotAvailableException {
 
-    if(!closePriceMap.containsKey(symbol)) {
+    int id = getInstrumentId(symbol);
+    double closePrice = mClosePrices[id];
+    if(Double.isNaN(closePrice)) {
       throw new PriceNotAvailableException();
     }
-    double closePrice = closePriceMap.get(symbol);
-    double currentPrice = getLastPrice(symbol);
+    double currentPrice = getLastPrice(id);
 
     BigDecimal diff = BigDecimal.valueOf(currentPrice).add(BigDecimal.valueOf(-closePrice));
 
@@ -174,5 +403,19 @@ public class BackTestTradingContext implements TradingContext {
     BigDecimal rounded = res.setScale(2, RoundingMode.HALF_UP);
     return rounded.doubleValue();
   }
-}
 
+  /**
+   * Order or close placed with a fill latency, filled at bar {@code mRow}. {@code mClose} is {@code null} for orders.
+   */
+  static final class PendingFill {
+    final int mRow;
+    final SimpleOrder mOrder;
+    final SimpleClosedOrder mClose;
+
+    PendingFill(int row, SimpleOrder order, SimpleClosedOrder close) {
+      mRow = row;
+      mOrder = order;
+      mClose = close;
+    }
+  }
+}
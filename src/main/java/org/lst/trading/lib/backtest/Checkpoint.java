@@ -0,0 +1,409 @@
+package org.lst.trading.lib.backtest;
+
+import com.google.common.collect.Maps;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.lst.trading.lib.model.Order;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+import org.lst.trading.lib.series.TimeSeries;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * State of a {@link BackTest} after a bar: the next row, the trading context and the strategy state.
+ * <p>
+ * The P/L and funds histories and the closed orders only grow, so they are not rewritten by every checkpoint: each
+ * checkpoint appends what was added since the previous one to a history file next to the checkpoint file, and the
+ * checkpoint records how long the history file was after its append. Capturing and writing a checkpoint therefore
+ * costs time proportional to the bars since the previous checkpoint and the open orders, not to the run so far.
+ * <p>
+ * {@link #capture(BackTest)} runs on the backtest thread and only copies what later bars could change; the new history
+ * rows are append-only, so an O(1) view of them is enough. {@link #write} does the encoding and I/O and may run on
+ * another thread. The checkpoint file is replaced atomically after the history is appended, and anything in the
+ * history file beyond the recorded length is ignored and overwritten later, so a crash during a write leaves the
+ * previous checkpoint intact.
+ */
+final class Checkpoint {
+  private static final int MAGIC = 0x51534350;
+  private static final int VERSION = 3;
+
+  int mRow;
+  int mSeriesSize;
+  long mFirstEpochNanos;
+  long mLastEpochNanos;
+  double mDeposit;
+  double mLeverage;
+  int mOrderId;
+  double mClosedPl;
+  double mCommissions;
+  double mOpenCost;
+  double mMargin;
+  double[] mExposures;
+  double[] mClosePrices;
+  List<SimpleOrder> mOpenOrders;
+  List<BackTestTradingContext.PendingFill> mPendingFills;
+  int[] mLastOrderIds;
+  byte[] mStrategyState;
+  int mHistoryRows;
+  int mHistoryOrders;
+  long mHistoryLength;
+
+  // history since the previous checkpoint when captured, the whole history when read
+  int mFirstHistoryRow;
+  int mFirstHistoryOrder;
+  DoubleSeries mPl;
+  DoubleSeries mFunds;
+  List<SimpleClosedOrder> mClosedOrders;
+
+  static Checkpoint capture(BackTest backTest) throws IOException {
+    BackTestTradingContext context = backTest.mContext;
+    MultipleDoubleSeries prices = backTest.mPriceSeries;
+
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.mRow = backTest.mRow;
+    checkpoint.mSeriesSize = prices.size();
+    checkpoint.mFirstEpochNanos = prices.getEpochNanos(0);
+    checkpoint.mLastEpochNanos = prices.getEpochNanos(prices.size() - 1);
+    checkpoint.mDeposit = backTest.mDeposit;
+    checkpoint.mLeverage = backTest.mLeverage;
+    checkpoint.mOrderId = context.mOrderId;
+    checkpoint.mClosedPl = context.mClosedPl;
+    checkpoint.mCommissions = context.mCommissions;
+    checkpoint.mOpenCost = context.mOpenCost;
+    checkpoint.mMargin = context.mMargin;
+    checkpoint.mExposures = context.mExposures.clone();
+    checkpoint.mClosePrices = context.mClosePrices.clone();
+    checkpoint.mOpenOrders = new ArrayList<>(context.mOrders);
+    // orders still pending change when they fill, so they are copied
+    checkpoint.mPendingFills = new ArrayList<>(context.mPendingFills.size());
+    for (BackTestTradingContext.PendingFill pending : context.mPendingFills) {
+      SimpleOrder order = pending.mOrder;
+      SimpleOrder copy = new SimpleOrder(order.mId, order.mInstrument, order.mOpenInstant, order.mOpenPrice,
+          order.mAmount);
+      checkpoint.mPendingFills.add(new BackTestTradingContext.PendingFill(pending.mRow, copy,
+          pending.mClose == null ? null : new SimpleClosedOrder(copy, Double.NaN, pending.mClose.mCloseInstant)));
+    }
+    checkpoint.mFirstHistoryRow = backTest.mCheckpointedRows;
+    checkpoint.mFirstHistoryOrder = backTest.mCheckpointedOrders;
+    int rows = context.mPl.size() - checkpoint.mFirstHistoryRow;
+    checkpoint.mPl = context.mPl.window(checkpoint.mFirstHistoryRow, rows);
+    checkpoint.mFunds = context.mFundsHistory.window(checkpoint.mFirstHistoryRow, rows);
+    checkpoint.mClosedOrders = new ArrayList<>(
+        context.mClosedOrders.subList(checkpoint.mFirstHistoryOrder, context.mClosedOrders.size()));
+    backTest.mCheckpointedRows = context.mPl.size();
+    backTest.mCheckpointedOrders = context.mClosedOrders.size();
+
+    Map<String, Order> lastOrders = context.orders;
+    checkpoint.mLastOrderIds = new int[lastOrders == null ? 0 : lastOrders.size()];
+    if (lastOrders != null) {
+      int i = 0;
+      for (Order order : lastOrders.values()) {
+        checkpoint.mLastOrderIds[i++] = order.getId();
+      }
+    }
+
+    if (backTest.mStrategy instanceof Checkpointable) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      ((Checkpointable) backTest.mStrategy).writeState(out);
+      out.flush();
+      checkpoint.mStrategyState = bytes.toByteArray();
+    }
+    return checkpoint;
+  }
+
+  static Path historyFile(Path file) {
+    return file.resolveSibling(file.getFileName() + ".history");
+  }
+
+  /**
+   * Appends the new history to the history file at {@code historyOffset}, the length recorded by the previous
+   * checkpoint, and then replaces {@code file}. Returns the history file's new length.
+   */
+  long write(Path file, long historyOffset) throws IOException {
+    try (FileChannel channel = FileChannel.open(historyFile(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      channel.truncate(historyOffset);
+      channel.position(historyOffset);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      out.writeInt(mPl.size());
+      for (int i = 0; i < mPl.size(); i++) {
+        out.writeLong(mPl.getEpochNanos(i));
+        out.writeDouble(mPl.getValue(i));
+        out.writeDouble(mFunds.getValue(i));
+      }
+      out.writeInt(mClosedOrders.size());
+      for (SimpleClosedOrder order : mClosedOrders) {
+        writeOrder(out, order.mOrder);
+        out.writeDouble(order.mClosePrice);
+        out.writeLong(TimeSeries.toEpochNanos(order.mCloseInstant));
+      }
+      out.flush();
+      mHistoryLength = channel.position();
+    }
+    mHistoryRows = mFirstHistoryRow + mPl.size();
+    mHistoryOrders = mFirstHistoryOrder + mClosedOrders.size();
+
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(mRow);
+      out.writeInt(mSeriesSize);
+      out.writeLong(mFirstEpochNanos);
+      out.writeLong(mLastEpochNanos);
+      out.writeDouble(mDeposit);
+      out.writeDouble(mLeverage);
+      out.writeInt(mOrderId);
+      out.writeDouble(mClosedPl);
+      out.writeDouble(mCommissions);
+      out.writeDouble(mOpenCost);
+      out.writeDouble(mMargin);
+      writeArray(out, mExposures);
+      writeArray(out, mClosePrices);
+
+      out.writeInt(mOpenOrders.size());
+      for (SimpleOrder order : mOpenOrders) {
+        writeOrder(out, order);
+      }
+      out.writeInt(mPendingFills.size());
+      for (BackTestTradingContext.PendingFill pending : mPendingFills) {
+        out.writeInt(pending.mRow);
+        writeOrder(out, pending.mOrder);
+        out.writeBoolean(pending.mClose != null);
+        if (pending.mClose != null) {
+          out.writeLong(TimeSeries.toEpochNanos(pending.mClose.mCloseInstant));
+        }
+      }
+      out.writeInt(mLastOrderIds.length);
+      for (int id : mLastOrderIds) {
+        out.writeInt(id);
+      }
+      out.writeInt(mHistoryRows);
+      out.writeInt(mHistoryOrders);
+      out.writeLong(mHistoryLength);
+
+      out.writeInt(mStrategyState == null ? -1 : mStrategyState.length);
+      if (mStrategyState != null) {
+        out.write(mStrategyState);
+      }
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return mHistoryLength;
+  }
+
+  static Checkpoint read(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      check(in.readInt() == MAGIC, "Not a checkpoint file: " + file);
+      check(in.readInt() == VERSION, "Unsupported checkpoint version: " + file);
+
+      Checkpoint checkpoint = new Checkpoint();
+      checkpoint.mRow = in.readInt();
+      checkpoint.mSeriesSize = in.readInt();
+      checkpoint.mFirstEpochNanos = in.readLong();
+      checkpoint.mLastEpochNanos = in.readLong();
+      checkpoint.mDeposit = in.readDouble();
+      checkpoint.mLeverage = in.readDouble();
+      checkpoint.mOrderId = in.readInt();
+      checkpoint.mClosedPl = in.readDouble();
+      checkpoint.mCommissions = in.readDouble();
+      checkpoint.mOpenCost = in.readDouble();
+      checkpoint.mMargin = in.readDouble();
+      checkpoint.mExposures = readArray(in);
+      checkpoint.mClosePrices = readArray(in);
+
+      int openOrders = in.readInt();
+      checkpoint.mOpenOrders = new ArrayList<>(openOrders);
+      for (int i = 0; i < openOrders; i++) {
+        checkpoint.mOpenOrders.add(readOrder(in));
+      }
+      int pendingFills = in.readInt();
+      checkpoint.mPendingFills = new ArrayList<>(pendingFills);
+      for (int i = 0; i < pendingFills; i++) {
+        int row = in.readInt();
+        SimpleOrder order = readOrder(in);
+        SimpleClosedOrder close = in.readBoolean()
+            ? new SimpleClosedOrder(order, Double.NaN, TimeSeries.ofEpochNanos(in.readLong())) : null;
+        checkpoint.mPendingFills.add(new BackTestTradingContext.PendingFill(row, order, close));
+      }
+      checkpoint.mLastOrderIds = new int[in.readInt()];
+      for (int i = 0; i < checkpoint.mLastOrderIds.length; i++) {
+        checkpoint.mLastOrderIds[i] = in.readInt();
+      }
+      checkpoint.mHistoryRows = in.readInt();
+      checkpoint.mHistoryOrders = in.readInt();
+      checkpoint.mHistoryLength = in.readLong();
+
+      int stateLength = in.readInt();
+      if (stateLength >= 0) {
+        checkpoint.mStrategyState = new byte[stateLength];
+        in.readFully(checkpoint.mStrategyState);
+      }
+      checkpoint.readHistory(historyFile(file));
+      return checkpoint;
+    }
+  }
+
+  /**
+   * Reads the history blocks appended up to this checkpoint.
+   */
+  private void readHistory(Path file) throws IOException {
+    mPl = new DoubleSeries("pl", mSeriesSize);
+    mFunds = new DoubleSeries("funds", mSeriesSize);
+    mClosedOrders = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      check(Files.size(file) >= mHistoryLength, "History file is shorter than the checkpoint expects: " + file);
+      while (mPl.size() < mHistoryRows || mClosedOrders.size() < mHistoryOrders) {
+        int rows = in.readInt();
+        for (int i = 0; i < rows; i++) {
+          long epochNanos = in.readLong();
+          mPl.add(in.readDouble(), epochNanos);
+          mFunds.add(in.readDouble(), epochNanos);
+        }
+        int orders = in.readInt();
+        for (int i = 0; i < orders; i++) {
+          SimpleOrder order = readOrder(in);
+          double closePrice = in.readDouble();
+          mClosedOrders.add(new SimpleClosedOrder(order, closePrice, TimeSeries.ofEpochNanos(in.readLong())));
+        }
+      }
+      check(mPl.size() == mHistoryRows && mClosedOrders.size() == mHistoryOrders,
+          "History file does not match the checkpoint: " + file);
+    }
+  }
+
+  /**
+   * Loads this checkpoint into a backtest whose context was just initialized.
+   */
+  void restore(BackTest backTest) throws IOException {
+    MultipleDoubleSeries prices = backTest.mPriceSeries;
+    check(prices.size() == mSeriesSize
+        && prices.getEpochNanos(0) == mFirstEpochNanos
+        && prices.getEpochNanos(prices.size() - 1) == mLastEpochNanos,
+        "Checkpoint was taken on a different price series");
+    check(backTest.mDeposit == mDeposit && backTest.mLeverage == mLeverage,
+        "Checkpoint was taken with a different deposit or leverage");
+
+    BackTestTradingContext context = backTest.mContext;
+    check(context.mExposures.length == mExposures.length, "Checkpoint was taken on a different price series");
+    context.mOrderId = mOrderId;
+    context.mClosedPl = mClosedPl;
+    context.mCommissions = mCommissions;
+    context.mOpenCost = mOpenCost;
+    context.mMargin = mMargin;
+    System.arraycopy(mExposures, 0, context.mExposures, 0, mExposures.length);
+    System.arraycopy(mClosePrices, 0, context.mClosePrices, 0, mClosePrices.length);
+    context.mPl = mPl;
+    context.mFundsHistory = mFunds;
+    context.mClosedOrders.addAll(mClosedOrders);
+    backTest.mCheckpointedRows = mPl.size();
+    backTest.mCheckpointedOrders = mClosedOrders.size();
+    backTest.mCheckpointHistoryLength = mHistoryLength;
+
+    // the running statistics are derived state, so they are replayed rather than stored
+    for (int i = 0; i < mPl.size(); i++) {
+      context.mStatistics.add(mDeposit + mPl.getValue(i));
+    }
+    for (SimpleClosedOrder order : mClosedOrders) {
+      context.mStatistics.addTrade(order.getPl());
+    }
+
+    for (SimpleOrder order : mOpenOrders) {
+      order.mInstrumentId = context.getInstrumentId(order.mInstrument);
+      context.mOrders.add(order);
+    }
+    for (BackTestTradingContext.PendingFill pending : mPendingFills) {
+      if (pending.mClose == null) {
+        pending.mOrder.mInstrumentId = context.getInstrumentId(pending.mOrder.mInstrument);
+        context.mPendingFills.add(pending);
+      } else {
+        // a close refers to an open order or an order still pending, by id
+        SimpleOrder order = findOrder(pending.mOrder.mId);
+        SimpleOrder closed = order == null ? pending.mOrder : order;
+        context.mPendingFills.add(new BackTestTradingContext.PendingFill(pending.mRow, closed,
+            new SimpleClosedOrder(closed, Double.NaN, pending.mClose.mCloseInstant)));
+      }
+    }
+    if (mLastOrderIds.length > 0) {
+      context.orders = Maps.newConcurrentMap();
+      for (int id : mLastOrderIds) {
+        SimpleOrder order = findOrder(id);
+        check(order != null, "Checkpoint refers to unknown order " + id);
+        context.orders.put(order.getInstrument(), order);
+      }
+    }
+
+    boolean checkpointable = backTest.mStrategy instanceof Checkpointable;
+    check(checkpointable == (mStrategyState != null),
+        checkpointable ? "Checkpoint has no strategy state" : "Strategy does not implement Checkpointable");
+    if (checkpointable) {
+      ((Checkpointable) backTest.mStrategy).readState(
+          new DataInputStream(new ByteArrayInputStream(mStrategyState)));
+    }
+
+    backTest.mRow = mRow;
+  }
+
+  /**
+   * Open order or order still pending with {@code id}, or {@code null}.
+   */
+  private SimpleOrder findOrder(int id) {
+    for (SimpleOrder order : mOpenOrders) {
+      if (order.getId() == id) {
+        return order;
+      }
+    }
+    for (BackTestTradingContext.PendingFill pending : mPendingFills) {
+      if (pending.mClose == null && pending.mOrder.getId() == id) {
+        return pending.mOrder;
+      }
+    }
+    return null;
+  }
+
+  private static void writeOrder(DataOutputStream out, SimpleOrder order) throws IOException {
+    out.writeInt(order.mId);
+    out.writeUTF(order.mInstrument);
+    out.writeLong(TimeSeries.toEpochNanos(order.mOpenInstant));
+    out.writeDouble(order.mOpenPrice);
+    out.writeInt(order.mAmount);
+  }
+
+  private static SimpleOrder readOrder(DataInputStream in) throws IOException {
+    int id = in.readInt();
+    String instrument = in.readUTF();
+    long openEpochNanos = in.readLong();
+    double openPrice = in.readDouble();
+    int amount = in.readInt();
+    return new SimpleOrder(id, instrument, TimeSeries.ofEpochNanos(openEpochNanos), openPrice, amount);
+  }
+
+  private static void writeArray(DataOutputStream out, double[] values) throws IOException {
+    out.writeInt(values.length);
+    for (double value : values) {
+      out.writeDouble(value);
+    }
+  }
+
+  private static double[] readArray(DataInputStream in) throws IOException {
+    double[] values = new double[in.readInt()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = in.readDouble();
+    }
+    return values;
+  }
+}
@@ -0,0 +1,22 @@
+package org.lst.trading.lib.backtest;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Strategy whose internal state is saved in {@link BackTest} checkpoints. Strategies that keep no state besides their
+ * trading context don't need to implement it.
+ */
+public interface Checkpointable {
+
+  /**
+   * Writes the state needed to continue after the current bar. Called on the backtest thread, so it should be quick.
+   */
+  void writeState(DataOutput out) throws IOException;
+
+  /**
+   * Restores the state written by {@link #writeState(DataOutput)}.
+   */
+  void readState(DataInput in) throws IOException;
+}
@@ -0,0 +1,35 @@
+package org.lst.trading.lib.backtest;
+
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+/**
+ * Decides how much of a backtest order fills and at which price. Amounts are signed, positive for buys. Models are
+ * called for every order and close in the bar loop, so they should not allocate.
+ */
+public interface FillModel {
+
+  /**
+   * Fills every order completely at the bar's price.
+   */
+  FillModel IMMEDIATE = (instrumentId, row, amount, price) -> price;
+
+  /**
+   * Called when a backtest starts on {@code priceSeries}; the instrument ids and rows passed to the other methods are
+   * its column and row indexes.
+   */
+  default void initialize(MultipleDoubleSeries priceSeries) {
+  }
+
+  /**
+   * Part of {@code amount} that fills at bar {@code row}, with the same sign or 0. The rest is cancelled. Only asked
+   * for orders that open a position; closes always fill in full so no remainder is left open.
+   */
+  default int fillAmount(int instrumentId, int row, int amount) {
+    return amount;
+  }
+
+  /**
+   * Price at which {@code amount} fills when the instrument trades at {@code price} at bar {@code row}.
+   */
+  double fillPrice(int instrumentId, int row, int amount, double price);
+}
@@ -0,0 +1,106 @@
+package org.lst.trading.lib.backtest;
+
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * {@link FillModel} for market orders: buys fill above and sells below the bar's price by
+ * <ul>
+ * <li>half the bid/ask spread, given as a fraction of the price,</li>
+ * <li>a fixed slippage per unit,</li>
+ * <li>a market impact proportional to the order's share of the bar volume.</li>
+ * </ul>
+ * With a participation limit, an order fills at most that share of the bar volume and the rest is cancelled; an order
+ * of which nothing fills is not opened. Closes are not limited, they always fill in full and only pay the spread,
+ * slippage and impact. Volumes are given as a series whose rows and columns line up with the backtest's price series;
+ * this is checked when a backtest starts.
+ */
+public class MarketFillModel implements FillModel {
+  double mSpread;
+  double mSlippage;
+  double mImpact;
+  double mParticipation = Double.POSITIVE_INFINITY;
+  MultipleDoubleSeries mVolumeSeries;
+  double[][] mVolumes;
+
+  /**
+   * Bid/ask spread as a fraction of the price, e.g. {@code 0.0002} for two basis points.
+   */
+  public void setSpread(double spread) {
+    checkArgument(spread >= 0, "spread must not be negative");
+    mSpread = spread;
+  }
+
+  /**
+   * Price move against the order per unit traded, in price units.
+   */
+  public void setSlippage(double slippage) {
+    checkArgument(slippage >= 0, "slippage must not be negative");
+    mSlippage = slippage;
+  }
+
+  /**
+   * Price move against the order, as a fraction of the price, per unit of order size over bar volume.
+   */
+  public void setImpact(double impact) {
+    checkArgument(impact >= 0, "impact must not be negative");
+    mImpact = impact;
+  }
+
+  /**
+   * Largest share of the bar volume a single order can fill.
+   */
+  public void setParticipation(double participation) {
+    checkArgument(participation > 0, "participation must be positive");
+    mParticipation = participation;
+  }
+
+  /**
+   * Volume of every instrument at every bar, with the columns and instants of the price series it is used with.
+   */
+  public void setVolumes(MultipleDoubleSeries volumes) {
+    checkArgument(volumes != null, "volumes is null");
+    mVolumeSeries = volumes;
+    mVolumes = new double[volumes.getNames().size()][];
+    for (int c = 0; c < mVolumes.length; c++) {
+      mVolumes[c] = volumes.getColumn(c).sharedValues();
+    }
+  }
+
+  @Override public void initialize(MultipleDoubleSeries priceSeries) {
+    if (mVolumeSeries == null) {
+      return;
+    }
+    checkArgument(mVolumeSeries.getNames().size() == priceSeries.getNames().size(),
+        "volumes have %s columns, prices have %s", mVolumeSeries.getNames().size(), priceSeries.getNames().size());
+    checkArgument(mVolumeSeries.size() == priceSeries.size(),
+        "volumes have %s rows, prices have %s", mVolumeSeries.size(), priceSeries.size());
+    for (int row = 0; row < priceSeries.size(); row++) {
+      if (mVolumeSeries.getEpochNanos(row) != priceSeries.getEpochNanos(row)) {
+        throw new IllegalArgumentException("volumes and prices differ in time at row " + row);
+      }
+    }
+  }
+
+  @Override public int fillAmount(int instrumentId, int row, int amount) {
+    if (mParticipation == Double.POSITIVE_INFINITY) {
+      return amount;
+    }
+    double limit = Math.floor(mParticipation * volume(instrumentId, row));
+    return Math.abs(amount) <= limit ? amount : Integer.signum(amount) * (int) limit;
+  }
+
+  @Override public double fillPrice(int instrumentId, int row, int amount, double price) {
+    double adverse = price * mSpread / 2 + mSlippage;
+    if (mImpact != 0) {
+      adverse += price * mImpact * Math.abs(amount) / Math.max(volume(instrumentId, row), 1);
+    }
+    return price + Integer.signum(amount) * adverse;
+  }
+
+  private double volume(int instrumentId, int row) {
+    checkArgument(mVolumes != null, "volumes are needed for impact and participation");
+    return mVolumes[instrumentId][row];
+  }
+}
@@ -0,0 +1,202 @@
+package org.lst.trading.lib.backtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.lst.trading.lib.model.ClosedOrder;
+import org.lst.trading.lib.util.Statistics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bootstraps a {@link BackTest.Result} to estimate how much its Sharpe ratio, max drawdown and return depend on luck.
+ * <ul>
+ * <li>{@link #resampleTrades} draws the closed trades with replacement and replays them from the initial fund.</li>
+ * <li>{@link #resampleReturns} draws blocks of consecutive account value returns (circular block bootstrap), which
+ * keeps the short-range autocorrelation of the returns.</li>
+ * </ul>
+ * Resamples are split into fixed chunks, each with its own {@link SplittableRandom} split off the seed in chunk order,
+ * so a given seed gives the same distribution on any pool size.
+ *
+ * <pre>{@code
+ * MonteCarlo.Report report = new MonteCarlo(result).resampleReturns(100_000, 20, 42, ForkJoinPool.commonPool());
+ * double lower = report.getSharpe().getQuantile(0.025);
+ * double upper = report.getSharpe().getQuantile(0.975);
+ * }</pre>
+ */
+public class MonteCarlo {
+  private static final int CHUNK_SIZE = 1024;
+
+  /**
+   * Sorted sample of one metric.
+   */
+  public static class Distribution {
+    final double[] mValues;
+
+    Distribution(double[] values) {
+      Arrays.sort(values);
+      mValues = values;
+    }
+
+    public int size() {
+      return mValues.length;
+    }
+
+    public double getMean() {
+      double sum = 0;
+      for (double value : mValues) {
+        sum += value;
+      }
+      return sum / mValues.length;
+    }
+
+    /**
+     * Empirical quantile, interpolated between the closest ranks. NaN values sort last.
+     */
+    public double getQuantile(double p) {
+      checkArgument(p >= 0 && p <= 1, "p must be in [0, 1]");
+      double rank = p * (mValues.length - 1);
+      int lower = (int) rank;
+      if (lower == mValues.length - 1) {
+        return mValues[lower];
+      }
+      return mValues[lower] + (rank - lower) * (mValues[lower + 1] - mValues[lower]);
+    }
+
+    /**
+     * Two-sided percentile interval, e.g. {@code getConfidenceInterval(0.95)} returns the 2.5% and 97.5% quantiles.
+     */
+    public double[] getConfidenceInterval(double level) {
+      checkArgument(level > 0 && level < 1, "level must be in (0, 1)");
+      double tail = (1 - level) / 2;
+      return new double[]{getQuantile(tail), getQuantile(1 - tail)};
+    }
+
+    public double[] toArray() {
+      return mValues.clone();
+    }
+  }
+
+  /**
+   * Distributions of the resampled metrics.
+   */
+  public static class Report {
+    final Distribution mSharpe;
+    final Distribution mMaxDrawdown;
+    final Distribution mReturn;
+
+    Report(double[] sharpe, double[] maxDrawdown, double[] returns) {
+      mSharpe = new Distribution(sharpe);
+      mMaxDrawdown = new Distribution(maxDrawdown);
+      mReturn = new Distribution(returns);
+    }
+
+    public Distribution getSharpe() {
+      return mSharpe;
+    }
+
+    public Distribution getMaxDrawdown() {
+      return mMaxDrawdown;
+    }
+
+    public Distribution getReturn() {
+      return mReturn;
+    }
+  }
+
+  private interface Sampler {
+    /**
+     * Fills {@code equity} with one resampled account value curve.
+     */
+    void sample(SplittableRandom random, double[] equity);
+  }
+
+  private final double initialFund;
+  private final double[] tradePl;
+  private final double[] returns;
+
+  public MonteCarlo(BackTest.Result result) {
+    checkArgument(result != null, "result is null");
+    initialFund = result.getInitialFund();
+
+    // commissions are not part of ClosedOrder.getPl(), so they are spread evenly over the trades
+    List<ClosedOrder> orders = result.getOrders();
+    double commission = orders.isEmpty() ? 0 : result.getCommissions() / orders.size();
+    tradePl = new double[orders.size()];
+    for (int i = 0; i < tradePl.length; i++) {
+      tradePl[i] = orders.get(i).getPl() - commission;
+    }
+
+    returns = Statistics.returns(result.getAccountValueHistory().toArray());
+  }
+
+  /**
+   * Resamples the closed trades with replacement, keeping their number.
+   */
+  public Report resampleTrades(int resamples, long seed, ForkJoinPool pool) {
+    checkArgument(tradePl.length > 0, "no closed trades to resample");
+    return run(resamples, tradePl.length + 1, seed, pool, (random, equity) -> {
+      equity[0] = initialFund;
+      for (int i = 0; i < tradePl.length; i++) {
+        equity[i + 1] = equity[i] + tradePl[random.nextInt(tradePl.length)];
+      }
+    });
+  }
+
+  /**
+   * Resamples the account value returns in circular blocks of {@code blockLength} bars. A block length of 1 is the
+   * plain i.i.d. bootstrap.
+   */
+  public Report resampleReturns(int resamples, int blockLength, long seed, ForkJoinPool pool) {
+    checkArgument(returns.length > 0, "no returns to resample");
+    checkArgument(blockLength > 0 && blockLength <= returns.length, "blockLength must be in [1, %s]", returns.length);
+    return run(resamples, returns.length + 1, seed, pool, (random, equity) -> {
+      equity[0] = initialFund;
+      int i = 0;
+      while (i < returns.length) {
+        int from = random.nextInt(returns.length);
+        for (int k = 0; k < blockLength && i < returns.length; k++, i++) {
+          equity[i + 1] = equity[i] * (1 + returns[(from + k) % returns.length]);
+        }
+      }
+    });
+  }
+
+  private Report run(int resamples, int length, long seed, ForkJoinPool pool, Sampler sampler) {
+    checkArgument(resamples > 0, "resamples must be positive");
+    checkArgument(pool != null, "pool is null");
+
+    double[] sharpe = new double[resamples];
+    double[] maxDrawdown = new double[resamples];
+    double[] totalReturn = new double[resamples];
+
+    SplittableRandom root = new SplittableRandom(seed);
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (int from = 0; from < resamples; from += CHUNK_SIZE) {
+      int start = from;
+      int end = Math.min(resamples, from + CHUNK_SIZE);
+      SplittableRandom random = root.split();
+      tasks.add(pool.submit(() -> {
+        double[] equity = new double[length];
+        double[] curveReturns = new double[length - 1];
+        for (int i = start; i < end; i++) {
+          sampler.sample(random, equity);
+          for (int t = 1; t < length; t++) {
+            curveReturns[t - 1] = equity[t] / equity[t - 1] - 1;
+          }
+          sharpe[i] = Statistics.sharpe(curveReturns);
+          maxDrawdown[i] = Statistics.drawdown(equity)[0];
+          totalReturn[i] = equity[length - 1] / initialFund - 1;
+        }
+      }));
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+
+    return new Report(sharpe, maxDrawdown, totalReturn);
+  }
+}
@@ -0,0 +1,164 @@
+package org.lst.trading.lib.backtest;
+
+import io.codera.quant.context.TradingContext;
+import io.codera.quant.strategy.Strategy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
+/**
+ * Runs one independent {@link BackTest} per point of a parameter grid on a {@link ForkJoinPool} and ranks the
+ * results. Every run gets its own {@link BackTestTradingContext} and strategy; the price matrix is shared read-only.
+ *
+ * <pre>{@code
+ * ParameterSweep<double[]> sweep = new ParameterSweep<>(prices, 30000, 4);
+ * List<ParameterSweep.Run<double[]>> runs = sweep.run(
+ *     ParameterSweep.grid(new double[]{1e-5, 1e-4}, new double[]{1e-3, 1e-2}),
+ *     (p, context) -> new KalmanFilterStrategy("SPY", "VOO", context, new Cointegration(p[0], p[1])),
+ *     ForkJoinPool.commonPool(),
+ *     BackTest.Result::getSharpe);
+ * }</pre>
+ *
+ * @param <P> type of one grid point
+ */
+public class ParameterSweep<P> {
+
+  /**
+   * Creates a fresh strategy for one grid point.
+   */
+  public interface StrategyFactory<P> {
+    Strategy create(P parameters, TradingContext context);
+  }
+
+  /**
+   * Outcome of one grid point.
+   */
+  public static class Run<P> {
+    final P mParameters;
+    final BackTest.Result mResult;
+    double mScore;
+
+    Run(P parameters, BackTest.Result result) {
+      mParameters = parameters;
+      mResult = result;
+    }
+
+    public P getParameters() {
+      return mParameters;
+    }
+
+    public BackTest.Result getResult() {
+      return mResult;
+    }
+
+    /**
+     * Value of the ranking metric, NaN if it is undefined for this run.
+     */
+    public double getScore() {
+      return mScore;
+    }
+  }
+
+  private final MultipleDoubleSeries priceSeries;
+  private final double deposit;
+  private final double leverage;
+
+  public ParameterSweep(MultipleDoubleSeries priceSeries, double deposit, double leverage) {
+    checkArgument(priceSeries != null, "priceSeries is null");
+    this.priceSeries = priceSeries;
+    this.deposit = deposit;
+    this.leverage = leverage;
+  }
+
+  /**
+   * Backtests every grid point on {@code pool} and returns the runs sorted by {@code metric}, best first. Runs with
+   * an undefined (NaN) metric are ranked last.
+   */
+  public List<Run<P>> run(List<P> grid, StrategyFactory<P> factory, ForkJoinPool pool,
+                          ToDoubleFunction<BackTest.Result> metric) {
+    checkArgument(grid != null, "grid is null");
+    checkArgument(factory != null, "factory is null");
+
+    List<ForkJoinTask<Run<P>>> tasks = new ArrayList<>(grid.size());
+    for (P parameters : grid) {
+      tasks.add(pool.submit(() -> run(parameters, factory, metric)));
+    }
+
+    List<Run<P>> runs = new ArrayList<>(tasks.size());
+    for (ForkJoinTask<Run<P>> task : tasks) {
+      runs.add(task.join());
+    }
+    runs.sort(byScore());
+    return runs;
+  }
+
+  /**
+   * Backtests a single grid point on the calling thread.
+   */
+  public Run<P> run(P parameters, StrategyFactory<P> factory, ToDoubleFunction<BackTest.Result> metric) {
+    BackTest backTest = new BackTest(deposit, priceSeries);
+    backTest.setLeverage(leverage);
+    Run<P> run = new Run<>(parameters, backTest.run(factory.create(parameters, new BackTestTradingContext())));
+    run.mScore = metric.applyAsDouble(run.mResult);
+    return run;
+  }
+
+  /**
+   * Cartesian product of the given axes, e.g. all {@code (delta, r)} pairs for {@code Cointegration}.
+   */
+  public static List<double[]> grid(double[]... axes) {
+    List<double[]> points = new ArrayList<>();
+    points.add(new double[0]);
+    for (double[] axis : axes) {
+      List<double[]> next = new ArrayList<>(points.size() * axis.length);
+      for (double[] point : points) {
+        for (double value : axis) {
+          double[] extended = new double[point.length + 1];
+          System.arraycopy(point, 0, extended, 0, point.length);
+          extended[point.length] = value;
+          next.add(extended);
+        }
+      }
+      points = next;
+    }
+    return points;
+  }
+
+  /**
+   * Formats ranked runs as CSV, one row per run.
+   */
+  public static <P> String toTable(List<Run<P>> runs, Function<P, String> parameters) {
+    StringBuilder table = new StringBuilder("rank,parameters,score,pl,return,sharpe,maxDrawdown,orders\n");
+    for (int i = 0; i < runs.size(); i++) {
+      Run<P> run = runs.get(i);
+      BackTest.Result result = run.getResult();
+      table.append(format(Locale.US, "%d,\"%s\",%f,%.2f,%f,%f,%.2f,%d\n", i + 1,
+          parameters.apply(run.getParameters()),
+          run.getScore(),
+          result.getPl(),
+          result.getReturn(),
+          result.getSharpe(),
+          result.getMaxDrawdown(),
+          result.getOrders().size()));
+    }
+    return table.toString();
+  }
+
+  static <P> Comparator<Run<P>> byScore() {
+    return (a, b) -> {
+      if (Double.isNaN(a.mScore) || Double.isNaN(b.mScore)) {
+        return Boolean.compare(Double.isNaN(a.mScore), Double.isNaN(b.mScore));
+      }
+      return Double.compare(b.mScore, a.mScore);
+    };
+  }
+}
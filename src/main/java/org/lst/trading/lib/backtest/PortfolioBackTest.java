@@ -0,0 +1,167 @@
+package org.lst.trading.lib.backtest;
+
+import io.codera.quant.strategy.Strategy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import org.lst.trading.lib.model.ClosedOrder;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+import org.lst.trading.lib.util.RunningStatistics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Backtests many strategies in a single pass over one price matrix. Every strategy trades its own sub-account (its
+ * {@link BackTestTradingContext} with its own deposit), so a sub-account running out of funds stops only that
+ * strategy. Each row is read once into a price vector shared by all sub-accounts.
+ * <p>
+ * The per-strategy results are the same as running each strategy through {@link BackTest}; the aggregate result sums
+ * the sub-accounts' P/L and funds, with stopped sub-accounts contributing their final value.
+ */
+public class PortfolioBackTest {
+
+  /**
+   * Aggregate result and one result per strategy, in the order the strategies were added.
+   */
+  public static class Result {
+    final BackTest.Result mResult;
+    final List<BackTest.Result> mResults;
+
+    Result(BackTest.Result result, List<BackTest.Result> results) {
+      mResult = result;
+      mResults = results;
+    }
+
+    public BackTest.Result getResult() {
+      return mResult;
+    }
+
+    public List<BackTest.Result> getResults() {
+      return mResults;
+    }
+  }
+
+  MultipleDoubleSeries mPriceSeries;
+  double mLeverage = 1;
+  List<Strategy> mStrategies = new ArrayList<>();
+  List<Double> mDeposits = new ArrayList<>();
+  Set<BackTestTradingContext> mContexts = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  public PortfolioBackTest(MultipleDoubleSeries priceSeries) {
+    check(priceSeries.isAscending());
+    mPriceSeries = priceSeries;
+  }
+
+  public void setLeverage(double leverage) {
+    mLeverage = leverage;
+  }
+
+  public double getLeverage() {
+    return mLeverage;
+  }
+
+  /**
+   * Adds a strategy with its own {@link BackTestTradingContext} funded with {@code deposit}.
+   */
+  public PortfolioBackTest add(Strategy strategy, double deposit) {
+    checkArgument(strategy != null, "strategy is null");
+    checkArgument(strategy.getTradingContext() instanceof BackTestTradingContext,
+        "strategy must trade a BackTestTradingContext");
+    checkArgument(mContexts.add((BackTestTradingContext) strategy.getTradingContext()),
+        "strategies must not share a trading context");
+    mStrategies.add(strategy);
+    mDeposits.add(deposit);
+    return this;
+  }
+
+  public Result run() {
+    checkArgument(!mStrategies.isEmpty(), "no strategies to run");
+
+    int count = mStrategies.size();
+    int rows = mPriceSeries.size();
+    int columns = mPriceSeries.getNames().size();
+    double[] prices = new double[columns];
+    double totalDeposit = 0;
+
+    BackTestTradingContext[] contexts = new BackTestTradingContext[count];
+    double[] deposits = new double[count];
+    for (int k = 0; k < count; k++) {
+      contexts[k] = (BackTestTradingContext) mStrategies.get(k).getTradingContext();
+      deposits[k] = mDeposits.get(k);
+      contexts[k].initialize(mPriceSeries);
+      contexts[k].mPrices = prices;
+      contexts[k].mInitialFunds = deposits[k];
+      contexts[k].mLeverage = mLeverage;
+      totalDeposit += deposits[k];
+    }
+
+    BackTest.Result[] results = new BackTest.Result[count];
+    double[] finalPl = new double[count];
+    DoubleSeries plHistory = new DoubleSeries("pl", rows);
+    DoubleSeries fundsHistory = new DoubleSeries("funds", rows);
+    RunningStatistics statistics = new RunningStatistics();
+
+    for (int row = 0; row < rows; row++) {
+      long time = mPriceSeries.getEpochNanos(row);
+      for (int i = 0; i < columns; i++) {
+        prices[i] = mPriceSeries.getValue(row, i);
+      }
+
+      double pl = 0;
+      double funds = 0;
+      for (int k = 0; k < count; k++) {
+        if (results[k] != null) {
+          pl += finalPl[k];
+          funds += deposits[k] + finalPl[k];
+          continue;
+        }
+
+        BackTestTradingContext context = contexts[k];
+        context.setTime(row, time);
+        double accountPl = context.getPl();
+        double accountFunds = context.getAvailableFunds();
+        context.mStatistics.add(deposits[k] + accountPl);
+        context.mPl.add(accountPl, time);
+        context.mFundsHistory.add(accountFunds, time);
+        pl += accountPl;
+        funds += accountFunds;
+
+        if (accountFunds < 0) {
+          results[k] = BackTest.finish(context, deposits[k]);
+          finalPl[k] = context.getPl();
+        } else {
+          mStrategies.get(k).onTick();
+        }
+      }
+      plHistory.add(pl, time);
+      fundsHistory.add(funds, time);
+      statistics.add(totalDeposit + pl);
+    }
+
+    double closedPl = 0;
+    double commissions = 0;
+    List<ClosedOrder> orders = new ArrayList<>();
+    for (int k = 0; k < count; k++) {
+      if (results[k] == null) {
+        results[k] = BackTest.finish(contexts[k], deposits[k]);
+      }
+      closedPl += results[k].getPl();
+      commissions += results[k].getCommissions();
+      orders.addAll(results[k].getOrders());
+    }
+    for (ClosedOrder order : orders) {
+      statistics.addTrade(order.getPl());
+    }
+
+    BackTest.Result aggregate = new BackTest.Result(closedPl, plHistory, fundsHistory,
+        Collections.unmodifiableList(orders), totalDeposit, totalDeposit + closedPl, commissions);
+    aggregate.mStatistics = statistics;
+    List<BackTest.Result> perStrategy = new ArrayList<>(count);
+    Collections.addAll(perStrategy, results);
+    return new Result(aggregate, Collections.unmodifiableList(perStrategy));
+  }
+}
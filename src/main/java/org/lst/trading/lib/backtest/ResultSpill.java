@@ -0,0 +1,230 @@
+package org.lst.trading.lib.backtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import org.lst.trading.lib.model.ClosedOrder;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MappedSeriesStore;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+import org.lst.trading.lib.series.TimeSeries;
+import org.lst.trading.lib.util.RunningStatistics;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Streams the equity points and closed orders of a backtest to disk as they happen instead of keeping them on the
+ * heap. Equity points go to a {@link MappedSeriesStore} file with {@code pl} and {@code funds} columns; closed orders
+ * go to a file of fixed-width little endian records, so the heap used does not grow with the length of the run.
+ * <p>
+ * The {@link BackTest.Result} returned by {@link #finish} answers the aggregate queries from the context's
+ * {@link RunningStatistics} and maps the spill files only when a history or the order list is asked for.
+ */
+final class ResultSpill implements Closeable {
+  // id, instrument id, amount, open price, close price, open and close epoch nanos
+  private static final int ORDER_BYTES = 4 + 4 + 4 + 8 + 8 + 8 + 8;
+  private static final int WRITE_BUFFER_SIZE = ORDER_BYTES * 1024;
+
+  final List<String> mInstruments;
+  final double mDeposit;
+  final Path mEquityFile;
+  final Path mOrdersFile;
+  final MappedSeriesStore.Writer mEquity;
+  final FileChannel mOrders;
+  final ByteBuffer mOrderBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  final double[] mRow = new double[2];
+  int mOrderCount;
+
+  ResultSpill(Path directory, List<String> instruments, double deposit) throws IOException {
+    mInstruments = instruments;
+    mDeposit = deposit;
+    Path equityFile = Files.createTempFile(directory, "equity", ".series");
+    Path ordersFile = null;
+    MappedSeriesStore.Writer equity = null;
+    FileChannel orders;
+    try {
+      ordersFile = Files.createTempFile(directory, "orders", ".bin");
+      equity = new MappedSeriesStore.Writer(equityFile, Arrays.asList("pl", "funds"));
+      orders = FileChannel.open(ordersFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    } catch (Throwable e) {
+      try {
+        if (equity != null) {
+          equity.abort();
+        }
+        if (ordersFile != null) {
+          Files.deleteIfExists(ordersFile);
+        }
+        Files.deleteIfExists(equityFile);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+    mEquityFile = equityFile;
+    mOrdersFile = ordersFile;
+    mEquity = equity;
+    mOrders = orders;
+  }
+
+  void addEquity(long epochNanos, double pl, double funds) {
+    mRow[0] = pl;
+    mRow[1] = funds;
+    try {
+      mEquity.add(epochNanos, mRow);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void addClosedOrder(SimpleClosedOrder order) {
+    try {
+      if (mOrderBuffer.remaining() < ORDER_BYTES) {
+        flushOrders();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    SimpleOrder open = order.mOrder;
+    mOrderBuffer.putInt(open.mId)
+        .putInt(open.mInstrumentId)
+        .putInt(open.mAmount)
+        .putDouble(open.mOpenPrice)
+        .putDouble(order.mClosePrice)
+        .putLong(TimeSeries.toEpochNanos(open.mOpenInstant))
+        .putLong(TimeSeries.toEpochNanos(order.mCloseInstant));
+    mOrderCount++;
+  }
+
+  BackTest.Result finish(double pl, double commissions, RunningStatistics statistics) throws IOException {
+    close();
+    SpilledResult result = new SpilledResult(this, pl, commissions);
+    result.mStatistics = statistics;
+    return result;
+  }
+
+  /**
+   * Closes and deletes the spill files, for a run that failed before {@link #finish}.
+   */
+  void abort() throws IOException {
+    try {
+      mOrders.close();
+      mEquity.abort();
+    } finally {
+      Files.deleteIfExists(mOrdersFile);
+      Files.deleteIfExists(mEquityFile);
+    }
+  }
+
+  @Override public void close() throws IOException {
+    if (mOrders.isOpen()) {
+      try {
+        flushOrders();
+      } finally {
+        mOrders.close();
+        mEquity.close();
+      }
+    }
+  }
+
+  private void flushOrders() throws IOException {
+    mOrderBuffer.flip();
+    while (mOrderBuffer.hasRemaining()) {
+      mOrders.write(mOrderBuffer);
+    }
+    mOrderBuffer.clear();
+  }
+
+  /**
+   * Result backed by the spill files, which are mapped on first access.
+   */
+  static class SpilledResult extends BackTest.Result {
+    final ResultSpill mSpill;
+    final int mRows;
+    MultipleDoubleSeries mEquity;
+    List<ClosedOrder> mSpilledOrders;
+
+    SpilledResult(ResultSpill spill, double pl, double commissions) {
+      super(pl, null, null, null, spill.mDeposit, spill.mDeposit + pl, commissions);
+      mSpill = spill;
+      mRows = spill.mEquity.size();
+    }
+
+    @Override public DoubleSeries getPlHistory() {
+      return getEquity().getColumn(0);
+    }
+
+    @Override public DoubleSeries getMarginHistory() {
+      return getEquity().getColumn(1);
+    }
+
+    @Override public List<ClosedOrder> getOrders() {
+      if (mSpilledOrders == null) {
+        mSpilledOrders = new SpilledOrders(mSpill.mOrdersFile, mSpill.mOrderCount, mSpill.mInstruments);
+      }
+      return mSpilledOrders;
+    }
+
+    @Override public int getDaysCount() {
+      return mRows;
+    }
+
+    private MultipleDoubleSeries getEquity() {
+      if (mEquity == null) {
+        try {
+          mEquity = MappedSeriesStore.open(mSpill.mEquityFile);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      return mEquity;
+    }
+  }
+
+  /**
+   * Read-only list decoding closed orders from the mapped spill file on access.
+   */
+  static class SpilledOrders extends AbstractList<ClosedOrder> implements RandomAccess {
+    final ByteBuffer mBuffer;
+    final int mSize;
+    final List<String> mInstruments;
+
+    SpilledOrders(Path file, int size, List<String> instruments) {
+      check((long) size * ORDER_BYTES <= Integer.MAX_VALUE, "Too many orders to map: " + size);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) size * ORDER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      mSize = size;
+      mInstruments = instruments;
+    }
+
+    @Override public ClosedOrder get(int index) {
+      if (index < 0 || index >= mSize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+      }
+      int offset = index * ORDER_BYTES;
+      int instrumentId = mBuffer.getInt(offset + 4);
+      SimpleOrder order = new SimpleOrder(mBuffer.getInt(offset), mInstruments.get(instrumentId),
+          TimeSeries.ofEpochNanos(mBuffer.getLong(offset + 28)), mBuffer.getDouble(offset + 12),
+          mBuffer.getInt(offset + 8));
+      order.mInstrumentId = instrumentId;
+      return new SimpleClosedOrder(order, mBuffer.getDouble(offset + 20),
+          TimeSeries.ofEpochNanos(mBuffer.getLong(offset + 36)));
+    }
+
+    @Override public int size() {
+      return mSize;
+    }
+  }
+}
@@ -9,6 +9,7 @@ public class SimpleOrder implements Order {
     double mOpenPrice;
     Instant mOpenInstant;
     String mInstrument;
+    int mInstrumentId;
 
     public SimpleOrder(int id, String instrument, Instant openInstant, double openPrice, int amount) {
         mId = id;
@@ -0,0 +1,198 @@
+package org.lst.trading.lib.backtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.lst.trading.lib.model.ClosedOrder;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+import org.lst.trading.lib.series.TimeSeries;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Backtests precomputed target positions instead of a {@link io.codera.quant.strategy.Strategy}, for strategies that
+ * are pure functions of price such as z-score or Kalman error bands. {@code positions[column][row]} is the signed
+ * number of units of the instrument in {@code column} to hold after bar {@code row}; changes are traded at that bar's
+ * price.
+ * <p>
+ * Accounting follows {@link BackTest} with {@link BackTestTradingContext}: the same P/L, margin and commission rules,
+ * the run stops when the available funds turn negative, and open positions are closed after the last bar. A position
+ * change is traded as one order per direction: reducing a position closes units at the average open price, and
+ * growing it opens units at the current price. Results match the event-driven engine for strategies that hold at most
+ * one order per instrument at a time.
+ * <p>
+ * The bar loop only fills primitive P/L and funds arrays; the result's {@link BackTest.Result#getStatistics()
+ * statistics} are computed from them on first access.
+ */
+public class VectorizedBackTest {
+  MultipleDoubleSeries mPriceSeries;
+  double mDeposit;
+  double mLeverage = 1;
+
+  public VectorizedBackTest(double deposit, MultipleDoubleSeries priceSeries) {
+    check(priceSeries.isAscending());
+    mDeposit = deposit;
+    mPriceSeries = priceSeries;
+  }
+
+  public void setLeverage(double leverage) {
+    mLeverage = leverage;
+  }
+
+  public double getLeverage() {
+    return mLeverage;
+  }
+
+  public BackTest.Result run(int[][] positions) {
+    List<String> instruments = mPriceSeries.getNames();
+    int columns = instruments.size();
+    int rows = mPriceSeries.size();
+    checkArgument(positions.length == columns, "expected positions for %s instruments", columns);
+    for (int[] column : positions) {
+      checkArgument(column.length == rows, "expected %s positions per instrument", rows);
+    }
+
+    double[][] prices = new double[columns][];
+    double[] multipliers = new double[columns];
+    for (int c = 0; c < columns; c++) {
+      prices[c] = mPriceSeries.getColumn(c).sharedValues();
+      multipliers[c] = BackTestTradingContext.multiplier(instruments.get(c));
+    }
+
+    long[] epochNanos = new long[rows];
+    for (int row = 0; row < rows; row++) {
+      epochNanos[row] = mPriceSeries.getEpochNanos(row);
+    }
+
+    Account account = new Account(instruments, multipliers, mLeverage);
+    double[] plHistory = new double[rows];
+    double[] fundsHistory = new double[rows];
+
+    int row = 0;
+    while (row < rows) {
+      double value = 0;
+      for (int c = 0; c < columns; c++) {
+        if (account.mExposures[c] != 0) {
+          value += account.mExposures[c] * prices[c][row];
+        }
+      }
+      double pl = account.mClosedPl + value - account.mOpenCost - account.mCommissions;
+      double funds = mDeposit + pl - account.mMargin;
+      plHistory[row] = pl;
+      fundsHistory[row] = funds;
+      if (funds < 0) {
+        break;
+      }
+
+      for (int c = 0; c < columns; c++) {
+        int target = positions[c][row];
+        if (target != account.mPositions[c]) {
+          account.trade(c, target, prices[c][row], epochNanos[row]);
+        }
+      }
+      row++;
+    }
+
+    int last = Math.min(row, rows - 1);
+    for (int c = 0; c < columns; c++) {
+      if (account.mPositions[c] != 0) {
+        account.trade(c, 0, prices[c][last], epochNanos[last]);
+      }
+    }
+
+    if (last + 1 < rows) {
+      epochNanos = Arrays.copyOf(epochNanos, last + 1);
+      plHistory = Arrays.copyOf(plHistory, last + 1);
+      fundsHistory = Arrays.copyOf(fundsHistory, last + 1);
+    }
+    return new BackTest.Result(account.mClosedPl, DoubleSeries.of("pl", epochNanos, plHistory),
+        DoubleSeries.of("funds", epochNanos, fundsHistory), Collections.unmodifiableList(account.mClosedOrders),
+        mDeposit, mDeposit + account.mClosedPl, account.mCommissions);
+  }
+
+  /**
+   * Per-instrument positions and the running totals {@link BackTestTradingContext} keeps, in flat arrays.
+   */
+  static class Account {
+    final List<String> mInstruments;
+    final double[] mMultipliers;
+    final double mLeverage;
+    final int[] mPositions;
+    final double[] mOpenPrices;
+    final long[] mOpenEpochNanos;
+    final double[] mExposures;
+    final List<ClosedOrder> mClosedOrders = new ArrayList<>();
+    int mOpenCount;
+    int mOrderId = 1;
+    double mClosedPl;
+    double mCommissions;
+    double mOpenCost;
+    double mMargin;
+
+    Account(List<String> instruments, double[] multipliers, double leverage) {
+      mInstruments = instruments;
+      mMultipliers = multipliers;
+      mLeverage = leverage;
+      mPositions = new int[instruments.size()];
+      mOpenPrices = new double[instruments.size()];
+      mOpenEpochNanos = new long[instruments.size()];
+      mExposures = new double[instruments.size()];
+    }
+
+    void trade(int c, int target, double price, long epochNanos) {
+      int position = mPositions[c];
+      if (position != 0 && (target == 0 || Integer.signum(target) != Integer.signum(position)
+          || Math.abs(target) < Math.abs(position))) {
+        close(c, Integer.signum(target) == Integer.signum(position) ? position - target : position, price, epochNanos);
+      }
+      if (target != mPositions[c]) {
+        open(c, target - mPositions[c], price, epochNanos);
+      }
+    }
+
+    private void open(int c, int amount, double price, long epochNanos) {
+      int position = mPositions[c];
+      double exposure = amount * mMultipliers[c];
+      mExposures[c] += exposure;
+      mOpenCost += exposure * price;
+      mMargin += Math.abs(amount) * price / mLeverage;
+      mCommissions += BackTestTradingContext.commission(mInstruments.get(c), amount, price);
+
+      if (position == 0) {
+        mOpenCount++;
+        mOpenPrices[c] = price;
+        mOpenEpochNanos[c] = epochNanos;
+      } else {
+        mOpenPrices[c] = (mOpenPrices[c] * Math.abs(position) + price * Math.abs(amount)) / Math.abs(position + amount);
+      }
+      mPositions[c] = position + amount;
+    }
+
+    private void close(int c, int amount, double price, long epochNanos) {
+      String instrument = mInstruments.get(c);
+      double openPrice = mOpenPrices[c];
+      SimpleOrder order = new SimpleOrder(mOrderId++, instrument, TimeSeries.ofEpochNanos(mOpenEpochNanos[c]),
+          openPrice, amount);
+      order.mInstrumentId = c;
+      SimpleClosedOrder closedOrder = new SimpleClosedOrder(order, price, TimeSeries.ofEpochNanos(epochNanos));
+      mClosedOrders.add(closedOrder);
+      mClosedPl += closedOrder.getPl();
+
+      double exposure = amount * mMultipliers[c];
+      mExposures[c] -= exposure;
+      mOpenCost -= exposure * openPrice;
+      mMargin -= Math.abs(amount) * openPrice / mLeverage;
+      mPositions[c] -= amount;
+      if (mPositions[c] == 0 && --mOpenCount == 0) {
+        // drop accumulated rounding once flat, as the context does
+        Arrays.fill(mExposures, 0);
+        mOpenCost = 0;
+        mMargin = 0;
+      }
+      mCommissions += BackTestTradingContext.commission(instrument, amount, openPrice);
+    }
+  }
+}
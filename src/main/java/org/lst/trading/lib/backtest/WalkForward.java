@@ -0,0 +1,190 @@
+package org.lst.trading.lib.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ToDoubleFunction;
+import org.lst.trading.lib.model.ClosedOrder;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Rolling walk-forward optimization: the price series is cut into consecutive windows of {@code trainBars} in-sample
+ * rows followed by {@code testBars} out-of-sample rows, advancing by {@code testBars}. In every window the grid is
+ * swept on the training rows with {@link ParameterSweep}, and the best parameters are backtested on the test rows
+ * with a fresh deposit. Windows are zero-copy views of the price matrix; the training runs of all windows and the
+ * test runs are submitted to the pool as independent tasks.
+ * <p>
+ * The out-of-sample runs are stitched into one {@link BackTest.Result}: each window's P/L and funds history is
+ * shifted by the P/L accumulated in the windows before it.
+ *
+ * @param <P> type of one grid point
+ */
+public class WalkForward<P> {
+
+  /**
+   * One train/test window and its outcome.
+   */
+  public static class Window<P> {
+    final int mTrainOffset;
+    final int mTestOffset;
+    final int mTestLength;
+    final ParameterSweep.Run<P> mBestTrainRun;
+    final BackTest.Result mTestResult;
+
+    Window(int trainOffset, int testOffset, int testLength, ParameterSweep.Run<P> bestTrainRun,
+           BackTest.Result testResult) {
+      mTrainOffset = trainOffset;
+      mTestOffset = testOffset;
+      mTestLength = testLength;
+      mBestTrainRun = bestTrainRun;
+      mTestResult = testResult;
+    }
+
+    public int getTrainOffset() {
+      return mTrainOffset;
+    }
+
+    public int getTestOffset() {
+      return mTestOffset;
+    }
+
+    public int getTestLength() {
+      return mTestLength;
+    }
+
+    public P getParameters() {
+      return mBestTrainRun.getParameters();
+    }
+
+    public ParameterSweep.Run<P> getBestTrainRun() {
+      return mBestTrainRun;
+    }
+
+    public BackTest.Result getTestResult() {
+      return mTestResult;
+    }
+  }
+
+  /**
+   * Stitched out-of-sample result and the windows it was built from.
+   */
+  public static class Report<P> {
+    final BackTest.Result mResult;
+    final List<Window<P>> mWindows;
+
+    Report(BackTest.Result result, List<Window<P>> windows) {
+      mResult = result;
+      mWindows = windows;
+    }
+
+    public BackTest.Result getResult() {
+      return mResult;
+    }
+
+    public List<Window<P>> getWindows() {
+      return mWindows;
+    }
+  }
+
+  private final MultipleDoubleSeries priceSeries;
+  private final double deposit;
+  private final double leverage;
+  private final int trainBars;
+  private final int testBars;
+
+  public WalkForward(MultipleDoubleSeries priceSeries, double deposit, double leverage, int trainBars, int testBars) {
+    checkArgument(priceSeries != null, "priceSeries is null");
+    checkArgument(trainBars > 0, "trainBars must be positive");
+    checkArgument(testBars > 0, "testBars must be positive");
+    checkArgument(priceSeries.size() > trainBars, "not enough data for a single window");
+    this.priceSeries = priceSeries;
+    this.deposit = deposit;
+    this.leverage = leverage;
+    this.trainBars = trainBars;
+    this.testBars = testBars;
+  }
+
+  /**
+   * Optimizes {@code metric} over {@code grid} in every window and stitches the out-of-sample results. The last test
+   * window may be shorter than {@code testBars}.
+   */
+  public Report<P> run(List<P> grid, ParameterSweep.StrategyFactory<P> factory, ForkJoinPool pool,
+                       ToDoubleFunction<BackTest.Result> metric) {
+    checkArgument(grid != null && !grid.isEmpty(), "grid is empty");
+    checkArgument(factory != null, "factory is null");
+
+    // every run is submitted and joined from the calling thread, so no task of the pool ever waits on another one
+    List<Integer> trainOffsets = new ArrayList<>();
+    List<List<ForkJoinTask<ParameterSweep.Run<P>>>> trainTasks = new ArrayList<>();
+    for (int start = 0; start + trainBars < priceSeries.size(); start += testBars) {
+      ParameterSweep<P> sweep = new ParameterSweep<>(priceSeries.window(start, trainBars), deposit, leverage);
+      List<ForkJoinTask<ParameterSweep.Run<P>>> tasks = new ArrayList<>(grid.size());
+      for (P parameters : grid) {
+        tasks.add(pool.submit(() -> sweep.run(parameters, factory, metric)));
+      }
+      trainOffsets.add(start);
+      trainTasks.add(tasks);
+    }
+
+    List<ForkJoinTask<Window<P>>> testTasks = new ArrayList<>(trainTasks.size());
+    for (int w = 0; w < trainTasks.size(); w++) {
+      List<ParameterSweep.Run<P>> runs = new ArrayList<>(grid.size());
+      for (ForkJoinTask<ParameterSweep.Run<P>> task : trainTasks.get(w)) {
+        runs.add(task.join());
+      }
+      runs.sort(ParameterSweep.byScore());
+      ParameterSweep.Run<P> best = runs.get(0);
+
+      int trainOffset = trainOffsets.get(w);
+      int testOffset = trainOffset + trainBars;
+      int testLength = Math.min(testBars, priceSeries.size() - testOffset);
+      testTasks.add(pool.submit(() -> testWindow(trainOffset, testOffset, testLength, best, factory, metric)));
+    }
+
+    List<Window<P>> windows = new ArrayList<>(testTasks.size());
+    for (ForkJoinTask<Window<P>> task : testTasks) {
+      windows.add(task.join());
+    }
+    return new Report<>(stitch(windows), windows);
+  }
+
+  private Window<P> testWindow(int trainOffset, int testOffset, int testLength, ParameterSweep.Run<P> best,
+                               ParameterSweep.StrategyFactory<P> factory, ToDoubleFunction<BackTest.Result> metric) {
+    MultipleDoubleSeries test = priceSeries.window(testOffset, testLength);
+    ParameterSweep.Run<P> outOfSample =
+        new ParameterSweep<P>(test, deposit, leverage).run(best.getParameters(), factory, metric);
+
+    return new Window<>(trainOffset, testOffset, testLength, best, outOfSample.getResult());
+  }
+
+  private BackTest.Result stitch(List<Window<P>> windows) {
+    int size = 0;
+    for (Window<P> window : windows) {
+      size += window.mTestResult.getPlHistory().size();
+    }
+
+    DoubleSeries plHistory = new DoubleSeries("pl", size);
+    DoubleSeries fundsHistory = new DoubleSeries("funds", size);
+    List<ClosedOrder> orders = new ArrayList<>();
+    double pl = 0;
+    double commissions = 0;
+    for (Window<P> window : windows) {
+      BackTest.Result result = window.mTestResult;
+      DoubleSeries windowPl = result.getPlHistory();
+      DoubleSeries windowFunds = result.getMarginHistory();
+      for (int i = 0; i < windowPl.size(); i++) {
+        plHistory.add(pl + windowPl.getValue(i), windowPl.getEpochNanos(i));
+        fundsHistory.add(pl + windowFunds.getValue(i), windowFunds.getEpochNanos(i));
+      }
+      orders.addAll(result.getOrders());
+      pl += result.getPl();
+      commissions += result.getCommissions();
+    }
+
+    return new BackTest.Result(pl, plHistory, fundsHistory, orders, deposit, deposit + pl, commissions);
+  }
+}
@@ -11,6 +11,7 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import org.lst.trading.lib.model.Bar;
+import org.lst.trading.lib.series.BarSeries;
 import org.lst.trading.lib.series.DoubleSeries;
 import org.lst.trading.lib.series.MultipleDoubleSeries;
 import org.lst.trading.lib.series.TimeSeries;
@@ -174,6 +175,7 @@ public class CsvReader {
                                 private double mLow = low.parse(parts[mColumns.indexOf(low.getColumn())]);
                                 private double mClose = close.parse(parts[mColumns.indexOf(close.getColumn())]);
                                 private long mVolume = volume.parse(parts[mColumns.indexOf(volume.getColumn())]);
+                                private Instant mStart = instant.parse(parts[mColumns.indexOf(instant.getColumn())]);
 
                                 @Override public double getOpen() {
                                     return mOpen;
@@ -196,7 +198,7 @@ public class CsvReader {
                                 }
 
                                 @Override public Instant getStart() {
-                                    return instant.parse(parts[mColumns.indexOf(instant.getColumn())]);
+                                    return mStart;
                                 }
 
                                 @Override public Duration getDuration() {
@@ -212,4 +214,10 @@ public class CsvReader {
                 }
             });
     }
+
+    public static BarSeries parse(String name, Stream<String> lines, ParseFunction<Double> open, ParseFunction<Double> high, ParseFunction<Double> low, ParseFunction<Double> close, ParseFunction<Long> volume, ParseFunction<Instant> instant) {
+        BarSeries series = new BarSeries(name);
+        parse(lines, open, high, low, close, volume, instant).forEachOrdered(series::add);
+        return series;
+    }
 }
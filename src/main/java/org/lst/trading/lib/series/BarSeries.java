@@ -0,0 +1,259 @@
+package org.lst.trading.lib.series;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.lst.trading.lib.model.Bar;
+
+/**
+ * Series of OHLCV bars stored as parallel primitive columns: epoch nanos of the bar start, open, high, low, close,
+ * volume and WAP. All bars share the series' {@link #getDuration() duration}.
+ * <p>
+ * {@link #getOpen()}, {@link #getHigh()}, {@link #getLow()}, {@link #getClose()}, {@link #getVolume()} and
+ * {@link #getWAP()} return {@link DoubleSeries} views sharing storage with this series. {@link Bar} objects are only
+ * created on demand by {@link #get(int)}, {@link #stream()} and {@link #iterator()}.
+ */
+public class BarSeries extends TimeSeries<Bar> {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    String mName;
+    Duration mDuration;
+    long[] mInstants;
+    double[] mOpen;
+    double[] mHigh;
+    double[] mLow;
+    double[] mClose;
+    double[] mVolume;
+    double[] mWap;
+    int mSize;
+
+    public BarSeries(String name, Duration duration) {
+        super(null);
+        mName = name;
+        mDuration = duration;
+        mInstants = new long[DEFAULT_CAPACITY];
+        mOpen = new double[DEFAULT_CAPACITY];
+        mHigh = new double[DEFAULT_CAPACITY];
+        mLow = new double[DEFAULT_CAPACITY];
+        mClose = new double[DEFAULT_CAPACITY];
+        mVolume = new double[DEFAULT_CAPACITY];
+        mWap = new double[DEFAULT_CAPACITY];
+    }
+
+    public BarSeries(String name) {
+        this(name, null);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public Duration getDuration() {
+        return mDuration;
+    }
+
+    @Override public int size() {
+        return mSize;
+    }
+
+    @Override public boolean add(Entry<Bar> entry) {
+        add(entry.getItem(), entry.getInstant());
+        return true;
+    }
+
+    @Override public void add(Bar bar, Instant instant) {
+        add(bar.getOpen(), bar.getHigh(), bar.getLow(), bar.getClose(), bar.getVolume(), bar.getWAP(), toEpochNanos(instant));
+    }
+
+    public void add(Bar bar) {
+        add(bar, bar.getStart());
+    }
+
+    public void add(double open, double high, double low, double close, long volume, double wap, long epochNanos) {
+        if (mSize == mInstants.length) {
+            grow(Math.max(DEFAULT_CAPACITY, mSize + (mSize >> 1)));
+        }
+        mInstants[mSize] = epochNanos;
+        mOpen[mSize] = open;
+        mHigh[mSize] = high;
+        mLow[mSize] = low;
+        mClose[mSize] = close;
+        mVolume[mSize] = volume;
+        mWap[mSize] = wap;
+        mSize++;
+    }
+
+    @Override public Entry<Bar> get(int index) {
+        checkIndex(index);
+        return new Entry<>(new Row(index), ofEpochNanos(mInstants[index]));
+    }
+
+    @Override long epochNanosAt(int index) {
+        return mInstants[index];
+    }
+
+    public long getEpochNanos(int index) {
+        checkIndex(index);
+        return mInstants[index];
+    }
+
+    public double getOpen(int index) {
+        checkIndex(index);
+        return mOpen[index];
+    }
+
+    public double getHigh(int index) {
+        checkIndex(index);
+        return mHigh[index];
+    }
+
+    public double getLow(int index) {
+        checkIndex(index);
+        return mLow[index];
+    }
+
+    public double getClose(int index) {
+        checkIndex(index);
+        return mClose[index];
+    }
+
+    public long getVolume(int index) {
+        checkIndex(index);
+        return (long) mVolume[index];
+    }
+
+    public double getWAP(int index) {
+        checkIndex(index);
+        return mWap[index];
+    }
+
+    public DoubleSeries getOpen() {
+        return column(mOpen, "open");
+    }
+
+    public DoubleSeries getHigh() {
+        return column(mHigh, "high");
+    }
+
+    public DoubleSeries getLow() {
+        return column(mLow, "low");
+    }
+
+    public DoubleSeries getClose() {
+        return column(mClose, "close");
+    }
+
+    public DoubleSeries getVolume() {
+        return column(mVolume, "volume");
+    }
+
+    public DoubleSeries getWAP() {
+        return column(mWap, "wap");
+    }
+
+    @Override public Stream<Entry<Bar>> stream() {
+        return IntStream.range(0, mSize).mapToObj(this::get);
+    }
+
+    @Override public Stream<Entry<Bar>> reversedStream() {
+        return IntStream.range(1, mSize + 1).mapToObj(i -> get(mSize - i));
+    }
+
+    @Override public Iterator<Entry<Bar>> iterator() {
+        return getData().iterator();
+    }
+
+    @Override public List<Entry<Bar>> getData() {
+        return new EntryList();
+    }
+
+    @Override public boolean isAscending() {
+        return mSize <= 1 || mInstants[0] < mInstants[1];
+    }
+
+    private DoubleSeries column(double[] values, String field) {
+        return DoubleSeries.view(mInstants, values, mSize, mName == null ? field : mName + "." + field);
+    }
+
+    private void grow(int capacity) {
+        mInstants = Arrays.copyOf(mInstants, capacity);
+        mOpen = Arrays.copyOf(mOpen, capacity);
+        mHigh = Arrays.copyOf(mHigh, capacity);
+        mLow = Arrays.copyOf(mLow, capacity);
+        mClose = Arrays.copyOf(mClose, capacity);
+        mVolume = Arrays.copyOf(mVolume, capacity);
+        mWap = Arrays.copyOf(mWap, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+    private class EntryList extends AbstractList<Entry<Bar>> implements RandomAccess {
+        @Override public Entry<Bar> get(int index) {
+            return BarSeries.this.get(index);
+        }
+
+        @Override public int size() {
+            return mSize;
+        }
+    }
+
+    private class Row implements Bar {
+        final int mIndex;
+
+        Row(int index) {
+            mIndex = index;
+        }
+
+        @Override public double getOpen() {
+            return mOpen[mIndex];
+        }
+
+        @Override public double getHigh() {
+            return mHigh[mIndex];
+        }
+
+        @Override public double getLow() {
+            return mLow[mIndex];
+        }
+
+        @Override public double getClose() {
+            return mClose[mIndex];
+        }
+
+        @Override public long getVolume() {
+            return (long) mVolume[mIndex];
+        }
+
+        @Override public Instant getStart() {
+            return ofEpochNanos(mInstants[mIndex]);
+        }
+
+        @Override public Duration getDuration() {
+            return mDuration;
+        }
+
+        @Override public double getWAP() {
+            return mWap[mIndex];
+        }
+    }
+
+    @Override public String toString() {
+        return isEmpty() ? "BarSeries{empty}" :
+            "BarSeries{" +
+                "mName=" + mName +
+                ", from=" + ofEpochNanos(mInstants[0]) +
+                ", to=" + ofEpochNanos(mInstants[mSize - 1]) +
+                ", size=" + mSize +
+                '}';
+    }
+}
@@ -0,0 +1,232 @@
+package org.lst.trading.lib.series;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Lazy arithmetic over {@link DoubleSeries}. Operations only build an expression tree; {@link #evaluate()} aligns
+ * all leaf series on their common instants and computes the whole tree in one pass, without intermediate series.
+ * Aligning needs ascending leaves; leaves stamped with the same instants, such as a single series, are combined
+ * element by element in their own order.
+ * <p>
+ * {@link #lag(int)} of a plain series is a zero-copy view and stays fused. Lagging a composite expression shifts
+ * along that expression's own timeline, so the inner expression is evaluated first.
+ */
+public abstract class DoubleExpression {
+
+    public static DoubleExpression of(DoubleSeries series) {
+        return new Leaf(series);
+    }
+
+    public DoubleExpression plus(DoubleExpression other) {
+        return new Binary(this, other, (x, y) -> x + y);
+    }
+
+    public DoubleExpression plus(DoubleSeries other) {
+        return plus(of(other));
+    }
+
+    public DoubleExpression plus(double other) {
+        return mapToDouble(x -> x + other);
+    }
+
+    public DoubleExpression mul(DoubleExpression other) {
+        return new Binary(this, other, (x, y) -> x * y);
+    }
+
+    public DoubleExpression mul(DoubleSeries other) {
+        return mul(of(other));
+    }
+
+    public DoubleExpression mul(double factor) {
+        return mapToDouble(x -> x * factor);
+    }
+
+    public DoubleExpression div(DoubleExpression other) {
+        return new Binary(this, other, (x, y) -> x / y);
+    }
+
+    public DoubleExpression div(DoubleSeries other) {
+        return div(of(other));
+    }
+
+    public DoubleExpression mapToDouble(DoubleUnaryOperator f) {
+        return new Unary(this, f);
+    }
+
+    public DoubleExpression lag(int k) {
+        return of(evaluate().lag(k));
+    }
+
+    DoubleExpression zip(DoubleSeries other, DoubleBinaryOperator f) {
+        return new Binary(this, of(other), f);
+    }
+
+    public DoubleSeries evaluate() {
+        List<DoubleSeries> leaves = new ArrayList<>();
+        Compiled compiled = compile(new IdentityHashMap<>(), leaves);
+
+        int count = leaves.size();
+        DoubleSeries[] series = leaves.toArray(new DoubleSeries[count]);
+        int capacity = Integer.MAX_VALUE;
+        for (DoubleSeries s : series) {
+            capacity = Math.min(capacity, s.mSize);
+        }
+
+        if (sharesTimeline(series)) {
+            return evaluateInPlace(compiled, series);
+        }
+        for (DoubleSeries s : series) {
+            check(s.isAscending());
+        }
+
+        long[] instants = new long[capacity];
+        double[] values = new double[capacity];
+        int size = 0;
+        int[] cursors = new int[count];
+
+        join:
+        while (true) {
+            long instant = Long.MIN_VALUE;
+            for (int l = 0; l < count; l++) {
+                if (cursors[l] >= series[l].mSize) {
+                    break join;
+                }
+                instant = Math.max(instant, series[l].instantAt(cursors[l]));
+            }
+
+            boolean aligned = true;
+            for (int l = 0; l < count; l++) {
+                DoubleSeries s = series[l];
+                int cursor = cursors[l];
+                while (cursor < s.mSize && s.instantAt(cursor) < instant) {
+                    cursor++;
+                }
+                if (cursor >= s.mSize) {
+                    break join;
+                }
+                aligned &= s.instantAt(cursor) == instant;
+                cursors[l] = cursor;
+            }
+
+            if (aligned) {
+                instants[size] = instant;
+                values[size] = compiled.eval(series, cursors);
+                size++;
+                for (int l = 0; l < count; l++) {
+                    cursors[l]++;
+                }
+            }
+        }
+
+        return new DoubleSeries(instants, values, size, series[0].mName);
+    }
+
+    /**
+     * Whether all leaves are stamped with the same instants, as a single series or views of one series are, so they
+     * need no alignment and may be in any order.
+     */
+    private static boolean sharesTimeline(DoubleSeries[] series) {
+        DoubleSeries first = series[0];
+        for (int l = 1; l < series.length; l++) {
+            DoubleSeries s = series[l];
+            if (s.mInstants == null || s.mInstants != first.mInstants || s.mInstantOffset != first.mInstantOffset
+                || s.mStep != first.mStep || s.mSize != first.mSize) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static DoubleSeries evaluateInPlace(Compiled compiled, DoubleSeries[] series) {
+        DoubleSeries first = series[0];
+        int size = first.mSize;
+        long[] instants = new long[size];
+        double[] values = new double[size];
+        int[] cursors = new int[series.length];
+        for (int i = 0; i < size; i++) {
+            instants[i] = first.instantAt(i);
+            values[i] = compiled.eval(series, cursors);
+            for (int l = 0; l < cursors.length; l++) {
+                cursors[l]++;
+            }
+        }
+        return new DoubleSeries(instants, values, size, first.mName);
+    }
+
+    /**
+     * The tree with each leaf resolved to its slot in the leaf series and cursors, local to one {@link #evaluate()}
+     * so expressions sharing nodes can be evaluated concurrently.
+     */
+    interface Compiled {
+        double eval(DoubleSeries[] series, int[] cursors);
+    }
+
+    /**
+     * Resolves the leaves of this tree, adding each distinct one to {@code leaves} and recording its slot in
+     * {@code slots}.
+     */
+    abstract Compiled compile(Map<Leaf, Integer> slots, List<DoubleSeries> leaves);
+
+    static class Leaf extends DoubleExpression {
+        final DoubleSeries mSeries;
+
+        Leaf(DoubleSeries series) {
+            mSeries = series;
+        }
+
+        @Override public DoubleExpression lag(int k) {
+            return of(mSeries.lag(k));
+        }
+
+        @Override Compiled compile(Map<Leaf, Integer> slots, List<DoubleSeries> leaves) {
+            Integer slot = slots.get(this);
+            if (slot == null) {
+                slot = leaves.size();
+                slots.put(this, slot);
+                leaves.add(mSeries);
+            }
+            int index = slot;
+            return (series, cursors) -> series[index].valueAt(cursors[index]);
+        }
+    }
+
+    static class Unary extends DoubleExpression {
+        final DoubleExpression mArgument;
+        final DoubleUnaryOperator mF;
+
+        Unary(DoubleExpression argument, DoubleUnaryOperator f) {
+            mArgument = argument;
+            mF = f;
+        }
+
+        @Override Compiled compile(Map<Leaf, Integer> slots, List<DoubleSeries> leaves) {
+            Compiled argument = mArgument.compile(slots, leaves);
+            return (series, cursors) -> mF.applyAsDouble(argument.eval(series, cursors));
+        }
+    }
+
+    static class Binary extends DoubleExpression {
+        final DoubleExpression mLeft;
+        final DoubleExpression mRight;
+        final DoubleBinaryOperator mF;
+
+        Binary(DoubleExpression left, DoubleExpression right, DoubleBinaryOperator f) {
+            mLeft = left;
+            mRight = right;
+            mF = f;
+        }
+
+        @Override Compiled compile(Map<Leaf, Integer> slots, List<DoubleSeries> leaves) {
+            Compiled left = mLeft.compile(slots, leaves);
+            Compiled right = mRight.compile(slots, leaves);
+            return (series, cursors) -> mF.applyAsDouble(left.eval(series, cursors), right.eval(series, cursors));
+        }
+    }
+}
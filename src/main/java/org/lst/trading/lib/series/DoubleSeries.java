@@ -1,19 +1,86 @@
 package org.lst.trading.lib.series;
 
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Series of doubles stored column-wise in a {@code long[]} of epoch nanos and a {@code double[]} of values.
+ * <p>
+ * {@link Entry} objects are only created on demand by {@link #get(int)}, {@link #stream()} and {@link #iterator()};
+ * hot paths should prefer {@link #getValue(int)}, {@link #getEpochNanos(int)} and {@link #sharedValues()}.
+ * <p>
+ * {@link #window(int, int)}, {@link #head(int)}, {@link #tail(int)}, {@link #lag(int)} and {@link #reverse()} are
+ * O(1) views sharing storage with this series. Element {@code i} of a view lives at
+ * {@code mInstantOffset + i * mStep} and {@code mValueOffset + i * mStep}; a view copies its data into private
+ * storage before it is modified.
+ */
 public class DoubleSeries extends TimeSeries<Double> {
+    private static final int DEFAULT_CAPACITY = 16;
+
     String mName;
+    long[] mInstants;
+    double[] mValues;
+    int mInstantOffset;
+    int mValueOffset;
+    int mStep = 1;
+    int mSize;
+    boolean mShared;
 
-    DoubleSeries(List<Entry<Double>> data, String name) {
-        super(data);
+    DoubleSeries(long[] instants, double[] values, int size, String name) {
+        super(null);
+        mInstants = instants;
+        mValues = values;
+        mSize = size;
         mName = name;
     }
 
+    DoubleSeries(List<Entry<Double>> data, String name) {
+        this(new long[data.size()], new double[data.size()], 0, name);
+        for (Entry<Double> entry : data) {
+            add(entry);
+        }
+    }
+
     public DoubleSeries(String name) {
-        super();
-        mName = name;
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    public DoubleSeries(String name, int capacity) {
+        this(new long[capacity], new double[capacity], 0, name);
+    }
+
+    /**
+     * Wraps {@code values} stamped with {@code epochNanos} without copying. The series takes ownership of both arrays,
+     * which may not be modified afterwards; an array may be shared with other series built this way.
+     */
+    public static DoubleSeries of(String name, long[] epochNanos, double[] values) {
+        check(epochNanos.length == values.length);
+        return view(epochNanos, values, values.length, name);
+    }
+
+    /**
+     * Wraps storage owned by someone else. The arrays are copied before the first {@link #add}.
+     */
+    static DoubleSeries view(long[] instants, double[] values, int size, String name) {
+        DoubleSeries series = new DoubleSeries(instants, values, size, name);
+        series.mShared = true;
+        return series;
+    }
+
+    DoubleSeries view(int instantFrom, int valueFrom, int size, int step) {
+        DoubleSeries series = view(mInstants, mValues, size, mName);
+        series.mInstantOffset = mInstantOffset + instantFrom * mStep;
+        series.mValueOffset = mValueOffset + valueFrom * mStep;
+        series.mStep = step * mStep;
+        return series;
     }
 
     public String getName() {
@@ -24,73 +91,270 @@ public class DoubleSeries extends TimeSeries<Double> {
         mName = name;
     }
 
+    @Override public int size() {
+        return mSize;
+    }
+
+    @Override public boolean add(Entry<Double> entry) {
+        add(entry.getItem(), entry.getInstant());
+        return true;
+    }
+
+    @Override public void add(Double item, Instant instant) {
+        add(item.doubleValue(), instant);
+    }
+
+    public void add(double value, Instant instant) {
+        add(value, toEpochNanos(instant));
+    }
+
+    public void add(double value, long epochNanos) {
+        if (mShared || !isContiguous() || mSize == mValues.length) {
+            compact(Math.max(DEFAULT_CAPACITY, mSize + (mSize >> 1)));
+        }
+        mInstants[mSize] = epochNanos;
+        mValues[mSize] = value;
+        mSize++;
+    }
+
+    @Override public Entry<Double> get(int index) {
+        return new Entry<>(getValue(index), getInstant(index));
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return valueAt(index);
+    }
+
+    public long getEpochNanos(int index) {
+        checkIndex(index);
+        return instantAt(index);
+    }
+
+    public Instant getInstant(int index) {
+        return ofEpochNanos(getEpochNanos(index));
+    }
+
+    double valueAt(int index) {
+        return mValues[mValueOffset + index * mStep];
+    }
+
+    long instantAt(int index) {
+        return mInstants[mInstantOffset + index * mStep];
+    }
+
+    @Override long epochNanosAt(int index) {
+        return instantAt(index);
+    }
+
+    @Override public Stream<Entry<Double>> stream() {
+        return IntStream.range(0, mSize).mapToObj(this::get);
+    }
+
+    @Override public Stream<Entry<Double>> reversedStream() {
+        return IntStream.range(1, mSize + 1).mapToObj(i -> get(mSize - i));
+    }
+
+    @Override public Iterator<Entry<Double>> iterator() {
+        return getData().iterator();
+    }
+
+    @Override public List<Entry<Double>> getData() {
+        return new EntryList();
+    }
+
+    @Override public boolean isAscending() {
+        return mSize <= 1 || instantAt(0) < instantAt(1);
+    }
+
     public DoubleSeries merge(DoubleSeries other, MergeFunction<Double, Double> f) {
-        return new DoubleSeries(DoubleSeries.merge(this, other, f).mData, mName);
+        return lazy().zip(other, f::merge).evaluate();
+    }
+
+    /**
+     * Aligns with {@code other} according to {@code join}. A side without a value for a row is passed to
+     * {@code f} as {@code NaN}.
+     */
+    public DoubleSeries merge(DoubleSeries other, JoinType join, MergeFunction<Double, Double> f) {
+        if (join == JoinType.INNER) {
+            return merge(other, f);
+        }
+
+        JoinIndex index = JoinIndex.of(this, other, join);
+        double[] values = new double[index.mSize];
+        for (int k = 0; k < index.mSize; k++) {
+            double x = index.mLeft[k] < 0 ? Double.NaN : valueAt(index.mLeft[k]);
+            double y = index.mRight[k] < 0 ? Double.NaN : other.valueAt(index.mRight[k]);
+            values[k] = f.merge(x, y);
+        }
+        return new DoubleSeries(index.mInstants, values, index.mSize, mName);
+    }
+
+    /**
+     * Starts a lazy expression over this series, see {@link DoubleExpression}.
+     */
+    public DoubleExpression lazy() {
+        return DoubleExpression.of(this);
     }
 
     public DoubleSeries mapToDouble(Function<Double, Double> f) {
-        return new DoubleSeries(map(f).mData, mName);
+        return lazy().mapToDouble(f::apply).evaluate();
     }
 
     public DoubleSeries plus(DoubleSeries other) {
-        return merge(other, (x, y) -> x + y);
+        return lazy().plus(other).evaluate();
     }
 
     public DoubleSeries plus(double other) {
-        return mapToDouble(x -> x + other);
+        return lazy().plus(other).evaluate();
     }
 
     public DoubleSeries mul(DoubleSeries other) {
-        return merge(other, (x, y) -> x * y);
+        return lazy().mul(other).evaluate();
     }
 
     public DoubleSeries mul(double factor) {
-        return mapToDouble(x -> x * factor);
+        return lazy().mul(factor).evaluate();
     }
 
     public DoubleSeries div(DoubleSeries other) {
-        return merge(other, (x, y) -> x / y);
+        return lazy().div(other).evaluate();
     }
 
     public DoubleSeries returns() {
-        return this.div(lag(1)).plus(-1);
+        return returns(1);
     }
 
     public double getLast() {
-        return getData().get(size() - 1).getItem();
+        return getValue(mSize - 1);
+    }
+
+    /**
+     * Returns a view of {@code length} elements starting at {@code offset}.
+     */
+    public DoubleSeries window(int offset, int length) {
+        check(offset >= 0 && length >= 0 && offset + length <= mSize);
+        return view(offset, offset, length, 1);
+    }
+
+    /**
+     * Returns a view of the elements in {@code [from, to)}.
+     */
+    @Override public DoubleSeries slice(Instant from, Instant to) {
+        int start = lowerBound(toEpochNanos(from));
+        return window(start, Math.max(start, lowerBound(toEpochNanos(to))) - start);
+    }
+
+    public DoubleSeries head(int n) {
+        return window(0, n);
     }
 
     public DoubleSeries tail(int n) {
-        return new DoubleSeries(getData().subList(size() - n, size()), getName());
+        return window(mSize - n, n);
     }
 
     public DoubleSeries returns(int days) {
-        return this.div(lag(days)).plus(-1);
+        return lazy().div(lag(days)).plus(-1).evaluate();
     }
 
+    /**
+     * Returns a copy of the values.
+     */
     public double[] toArray() {
-        return stream().mapToDouble(Entry::getItem).toArray();
+        double[] values = new double[mSize];
+        copyTo(values, 0);
+        return values;
+    }
+
+    /**
+     * Returns the values without copying. The backing array itself is returned once this series covers it exactly
+     * (views are compacted into private storage on first call), and it may be shared with other series such as the
+     * other columns' views of a {@link MultipleDoubleSeries}, so the result must not be modified; values added
+     * afterwards go to a fresh array and are not visible through it. Use {@link #toArray()} for a copy.
+     */
+    public double[] sharedValues() {
+        if (!isContiguous() || mValues.length != mSize) {
+            compact(mSize);
+        }
+        return mValues;
+    }
+
+    /**
+     * Copies the values into {@code target} starting at {@code offset} without allocating.
+     */
+    public void copyTo(double[] target, int offset) {
+        for (int i = 0; i < mSize; i++) {
+            target[offset + i] = valueAt(i);
+        }
     }
 
     @Override public DoubleSeries toAscending() {
-        return new DoubleSeries(super.toAscending().mData, getName());
+        return isAscending() ? this : reverse();
     }
 
     @Override public DoubleSeries toDescending() {
-        return new DoubleSeries(super.toDescending().mData, getName());
+        return isAscending() ? reverse() : this;
     }
 
+    /**
+     * Returns a reversed view of this series.
+     */
+    @Override public DoubleSeries reverse() {
+        return mSize == 0 ? this : view(mSize - 1, mSize - 1, mSize, -1);
+    }
+
+    /**
+     * Returns a view in which the value at each instant is the value {@code k} elements earlier.
+     */
     @Override public DoubleSeries lag(int k) {
-        return new DoubleSeries(super.lag(k).mData, getName());
+        check(k > 0);
+        check(mSize >= k);
+
+        return view(k, 0, mSize - k, 1);
+    }
+
+    private boolean isContiguous() {
+        return mStep == 1 && mInstantOffset == 0 && mValueOffset == 0;
+    }
+
+    private void compact(int capacity) {
+        long[] instants = new long[capacity];
+        double[] values = new double[capacity];
+        for (int i = 0; i < mSize; i++) {
+            instants[i] = instantAt(i);
+            values[i] = valueAt(i);
+        }
+        mInstants = instants;
+        mValues = values;
+        mInstantOffset = 0;
+        mValueOffset = 0;
+        mStep = 1;
+        mShared = false;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+    private class EntryList extends AbstractList<Entry<Double>> implements RandomAccess {
+        @Override public Entry<Double> get(int index) {
+            return DoubleSeries.this.get(index);
+        }
+
+        @Override public int size() {
+            return mSize;
+        }
     }
 
     @Override public String toString() {
-        return mData.isEmpty() ? "DoubleSeries{empty}" :
+        return isEmpty() ? "DoubleSeries{empty}" :
             "DoubleSeries{" +
                 "mName=" + mName +
-                ", from=" + mData.get(0).getInstant() +
-                ", to=" + mData.get(mData.size() - 1).getInstant() +
-                ", size=" + mData.size() +
+                ", from=" + getInstant(0) +
+                ", to=" + getInstant(mSize - 1) +
+                ", size=" + mSize +
                 '}';
     }
 }
@@ -0,0 +1,119 @@
+package org.lst.trading.lib.series;
+
+import org.lst.trading.lib.series.TimeSeries.JoinType;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Result of aligning two ascending series: the output instants and, for every output row, the index of the
+ * contributing element in each input or {@code -1} if that input has no value for the row.
+ * <p>
+ * Computed in a single linear pass over primitive epoch nanos.
+ */
+final class JoinIndex {
+    final long[] mInstants;
+    final int[] mLeft;
+    final int[] mRight;
+    int mSize;
+
+    private JoinIndex(int capacity) {
+        mInstants = new long[capacity];
+        mLeft = new int[capacity];
+        mRight = new int[capacity];
+    }
+
+    private void emit(long instant, int left, int right) {
+        mInstants[mSize] = instant;
+        mLeft[mSize] = left;
+        mRight[mSize] = right;
+        mSize++;
+    }
+
+    /**
+     * True if every left row is kept, in order, so left-hand columns can be reused without copying.
+     */
+    boolean keepsAllLeftRows(int leftSize) {
+        if (mSize != leftSize) {
+            return false;
+        }
+        for (int k = 0; k < mSize; k++) {
+            if (mLeft[k] != k) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static JoinIndex of(TimeSeries<?> t1, TimeSeries<?> t2, JoinType type) {
+        check(t1.isAscending());
+        check(t2.isAscending());
+
+        int n = t1.size();
+        int m = t2.size();
+        int i = 0, j = 0;
+
+        switch (type) {
+            case INNER: {
+                JoinIndex join = new JoinIndex(Math.min(n, m));
+                while (i < n && j < m) {
+                    long a = t1.epochNanosAt(i);
+                    long b = t2.epochNanosAt(j);
+                    if (a < b) {
+                        i++;
+                    } else if (b < a) {
+                        j++;
+                    } else {
+                        join.emit(a, i++, j++);
+                    }
+                }
+                return join;
+            }
+            case LEFT_OUTER: {
+                JoinIndex join = new JoinIndex(n);
+                for (; i < n; i++) {
+                    long a = t1.epochNanosAt(i);
+                    while (j < m && t2.epochNanosAt(j) < a) {
+                        j++;
+                    }
+                    join.emit(a, i, j < m && t2.epochNanosAt(j) == a ? j : -1);
+                }
+                return join;
+            }
+            case AS_OF: {
+                JoinIndex join = new JoinIndex(n);
+                for (; i < n; i++) {
+                    long a = t1.epochNanosAt(i);
+                    while (j < m && t2.epochNanosAt(j) <= a) {
+                        j++;
+                    }
+                    join.emit(a, i, j - 1);
+                }
+                return join;
+            }
+            case FULL_OUTER_FORWARD_FILL: {
+                JoinIndex join = new JoinIndex(n + m);
+                int lastI = -1, lastJ = -1;
+                while (i < n || j < m) {
+                    long a = i < n ? t1.epochNanosAt(i) : Long.MAX_VALUE;
+                    long b = j < m ? t2.epochNanosAt(j) : Long.MAX_VALUE;
+                    long instant;
+                    if (j >= m || i < n && a < b) {
+                        instant = a;
+                        lastI = i++;
+                    } else if (i >= n || b < a) {
+                        instant = b;
+                        lastJ = j++;
+                    } else {
+                        instant = a;
+                        lastI = i++;
+                        lastJ = j++;
+                    }
+                    join.emit(instant, lastI, lastJ);
+                }
+                return join;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported join " + type);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.lst.trading.lib.series;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.lst.trading.lib.series.TimeSeries.JoinType;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Aligns any number of ascending {@link DoubleSeries} in one pass, using a min-heap of cursors keyed by their
+ * current epoch nanos. The result is identical to folding {@link MultipleDoubleSeries#addSeries(DoubleSeries,
+ * JoinType)} over the inputs, with the first series as the left side of {@link JoinType#LEFT_OUTER} and
+ * {@link JoinType#AS_OF}.
+ * <p>
+ * The time range can be split into chunks which are merged independently on a {@link ForkJoinPool}; forward-fill
+ * state at a chunk boundary is recovered by binary search, so chunking does not change the result.
+ */
+final class KWayJoin {
+    private static final int MIN_CHUNK_SIZE = 1 << 14;
+
+    final DoubleSeries[] mSeries;
+    final JoinType mType;
+    long[] mInstants;
+    double[][] mColumns;
+    int mSize;
+
+    private KWayJoin(DoubleSeries[] series, JoinType type, int capacity) {
+        mSeries = series;
+        mType = type;
+        mInstants = new long[capacity];
+        mColumns = new double[series.length][capacity];
+    }
+
+    static KWayJoin of(DoubleSeries[] series, JoinType type) {
+        return of(series, type, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Merges on {@code pool} in about {@code pool.getParallelism()} chunks, or sequentially if the inputs are too
+     * small to be worth splitting.
+     */
+    static KWayJoin of(DoubleSeries[] series, JoinType type, ForkJoinPool pool) {
+        DoubleSeries longest = null;
+        for (DoubleSeries s : series) {
+            check(s.isAscending());
+            if (longest == null || s.mSize > longest.mSize) {
+                longest = s;
+            }
+        }
+
+        int chunks = longest == null ? 1 : Math.min(pool.getParallelism(), longest.mSize / MIN_CHUNK_SIZE);
+        if (chunks <= 1) {
+            return of(series, type);
+        }
+
+        List<ForkJoinTask<KWayJoin>> tasks = new ArrayList<>(chunks);
+        long from = Long.MIN_VALUE;
+        for (int c = 1; c <= chunks; c++) {
+            long to = c == chunks ? Long.MAX_VALUE : longest.instantAt((int) ((long) longest.mSize * c / chunks));
+            long chunkFrom = from;
+            tasks.add(pool.submit(() -> of(series, type, chunkFrom, to)));
+            from = to;
+        }
+
+        List<KWayJoin> parts = new ArrayList<>(chunks);
+        int size = 0;
+        for (ForkJoinTask<KWayJoin> task : tasks) {
+            KWayJoin part = task.join();
+            parts.add(part);
+            size += part.mSize;
+        }
+
+        KWayJoin join = new KWayJoin(series, type, size);
+        for (KWayJoin part : parts) {
+            System.arraycopy(part.mInstants, 0, join.mInstants, join.mSize, part.mSize);
+            for (int l = 0; l < series.length; l++) {
+                System.arraycopy(part.mColumns[l], 0, join.mColumns[l], join.mSize, part.mSize);
+            }
+            join.mSize += part.mSize;
+        }
+        return join;
+    }
+
+    /**
+     * Merges the instants in {@code [from, to)}.
+     */
+    static KWayJoin of(DoubleSeries[] series, JoinType type, long from, long to) {
+        int count = series.length;
+        int[] cursors = new int[count];
+        int[] ends = new int[count];
+        int[] last = new int[count];
+        int[] hits = new int[count];
+        int capacity = 0;
+        for (int l = 0; l < count; l++) {
+            check(series[l].isAscending());
+            cursors[l] = series[l].lowerBound(from);
+            ends[l] = series[l].lowerBound(to);
+            last[l] = cursors[l] - 1;
+            hits[l] = -1;
+            capacity = Math.max(capacity, ends[l] - cursors[l]);
+        }
+
+        KWayJoin join = new KWayJoin(series, type, capacity);
+        if (count == 0) {
+            return join;
+        }
+
+        int[] heap = new int[count];
+        int heapSize = 0;
+        for (int l = 0; l < count; l++) {
+            if (cursors[l] < ends[l]) {
+                heap[heapSize++] = l;
+            }
+        }
+        for (int h = heapSize / 2 - 1; h >= 0; h--) {
+            join.siftDown(heap, heapSize, h, cursors);
+        }
+
+        int step = 0;
+        while (heapSize > 0) {
+            long instant = series[heap[0]].instantAt(cursors[heap[0]]);
+            int matched = 0;
+            while (heapSize > 0 && series[heap[0]].instantAt(cursors[heap[0]]) == instant) {
+                int l = heap[0];
+                hits[l] = step;
+                last[l] = cursors[l]++;
+                matched++;
+                if (cursors[l] == ends[l]) {
+                    heap[0] = heap[--heapSize];
+                }
+                if (heapSize > 0) {
+                    join.siftDown(heap, heapSize, 0, cursors);
+                }
+            }
+
+            join.emit(instant, step, matched, hits, last);
+            if (join.isExhausted(cursors, ends)) {
+                break;
+            }
+            step++;
+        }
+        return join;
+    }
+
+    /**
+     * True once no further row can be emitted, e.g. an inner join after any input ran out.
+     */
+    private boolean isExhausted(int[] cursors, int[] ends) {
+        switch (mType) {
+            case INNER:
+                for (int l = 0; l < cursors.length; l++) {
+                    if (cursors[l] == ends[l]) {
+                        return true;
+                    }
+                }
+                return false;
+            case LEFT_OUTER:
+            case AS_OF:
+                return cursors[0] == ends[0];
+            default:
+                return false;
+        }
+    }
+
+    private void emit(long instant, int step, int matched, int[] hits, int[] last) {
+        int count = mSeries.length;
+        switch (mType) {
+            case INNER:
+                if (matched < count) {
+                    return;
+                }
+                break;
+            case LEFT_OUTER:
+            case AS_OF:
+                if (hits[0] != step) {
+                    return;
+                }
+                break;
+            case FULL_OUTER_FORWARD_FILL:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported join " + mType);
+        }
+
+        if (mSize == mInstants.length) {
+            int capacity = Math.max(16, mSize + (mSize >> 1));
+            mInstants = Arrays.copyOf(mInstants, capacity);
+            for (int l = 0; l < count; l++) {
+                mColumns[l] = Arrays.copyOf(mColumns[l], capacity);
+            }
+        }
+
+        mInstants[mSize] = instant;
+        for (int l = 0; l < count; l++) {
+            boolean present = mType == JoinType.LEFT_OUTER ? hits[l] == step : last[l] >= 0;
+            mColumns[l][mSize] = present ? mSeries[l].valueAt(last[l]) : Double.NaN;
+        }
+        mSize++;
+    }
+
+    private void siftDown(int[] heap, int heapSize, int h, int[] cursors) {
+        int l = heap[h];
+        long key = mSeries[l].instantAt(cursors[l]);
+        while (true) {
+            int child = 2 * h + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            long childKey = mSeries[heap[child]].instantAt(cursors[heap[child]]);
+            if (child + 1 < heapSize) {
+                long rightKey = mSeries[heap[child + 1]].instantAt(cursors[heap[child + 1]]);
+                if (rightKey < childKey) {
+                    child++;
+                    childKey = rightKey;
+                }
+            }
+            if (key <= childKey) {
+                break;
+            }
+            heap[h] = heap[child];
+            h = child;
+        }
+        heap[h] = l;
+    }
+}
@@ -0,0 +1,338 @@
+package org.lst.trading.lib.series;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Stores series in files which are memory-mapped when read, so histories larger than the heap can be backtested and
+ * several JVMs on one host share a single copy in the OS page cache.
+ * <p>
+ * Layout, little endian: magic, version, row count, column count, the column names, padding to 8 bytes, then one
+ * fixed-width column of epoch nanos followed by one column of values per series. Mapped series are read-only.
+ */
+public class MappedSeriesStore {
+    private static final int MAGIC = 0x51534552;
+    private static final int VERSION = 1;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    public static void write(Path file, DoubleSeries series) throws IOException {
+        write(file, new MultipleDoubleSeries(series));
+    }
+
+    public static void write(Path file, MultipleDoubleSeries series) throws IOException {
+        check(series.isAscending());
+        List<String> names = series.getNames();
+        int rows = series.size();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header(names, rows));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < rows; i++) {
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(series.getEpochNanos(i));
+            }
+            for (int c = 0; c < names.size(); c++) {
+                for (int i = 0; i < rows; i++) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putDouble(series.getValue(i, c));
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    public static MultipleDoubleSeries open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer fixed = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, fixed, 0);
+            check(fixed.getInt() == MAGIC, "Not a series file: " + file);
+            check(fixed.getInt() == VERSION, "Unsupported series file version: " + file);
+            int rows = fixed.getInt();
+            int columns = fixed.getInt();
+            check((long) rows * Double.BYTES <= Integer.MAX_VALUE, "Too many rows to map: " + rows);
+
+            List<String> names = new ArrayList<>(columns);
+            long position = fixed.capacity();
+            ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int c = 0; c < columns; c++) {
+                length.clear();
+                readFully(channel, length, position);
+                int size = length.getInt();
+                position += 4;
+                if (size < 0) {
+                    names.add(null);
+                } else {
+                    ByteBuffer bytes = ByteBuffer.allocate(size);
+                    readFully(channel, bytes, position);
+                    names.add(new String(bytes.array(), StandardCharsets.UTF_8));
+                    position += size;
+                }
+            }
+
+            long offset = align(position);
+            long columnBytes = (long) rows * Double.BYTES;
+            check(channel.size() >= offset + columnBytes * (columns + 1), "Truncated series file: " + file);
+
+            LongBuffer instants = channel.map(FileChannel.MapMode.READ_ONLY, offset, columnBytes)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            DoubleBuffer[] values = new DoubleBuffer[columns];
+            for (int c = 0; c < columns; c++) {
+                values[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + columnBytes * (c + 1), columnBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            return new MappedMultipleDoubleSeries(names, instants, values, rows);
+        }
+    }
+
+    private static ByteBuffer header(List<String> names, int rows) {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(names)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(names.size());
+        for (String name : names) {
+            byte[] bytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+            header.putInt(bytes == null ? -1 : bytes.length);
+            if (bytes != null) {
+                header.put(bytes);
+            }
+        }
+        header.position(header.capacity());
+        header.flip();
+        return header;
+    }
+
+    private static int headerSize(List<String> names) {
+        long size = 16;
+        for (String name : names) {
+            size += 4 + (name == null ? 0 : name.getBytes(StandardCharsets.UTF_8).length);
+        }
+        return (int) align(size);
+    }
+
+    private static long align(long position) {
+        return (position + Double.BYTES - 1) & -Double.BYTES;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of series file");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Writes a series file row by row when the number of rows is not known up front, keeping only a small buffer per
+     * column on the heap. Each column is spilled to its own temporary file next to the target; {@link #close()} writes
+     * the header and appends the columns, after which the file can be {@link #open(Path) opened}.
+     */
+    public static class Writer implements Closeable {
+        final Path mFile;
+        final List<String> mNames;
+        final Path[] mColumnFiles;
+        final FileChannel[] mChannels;
+        final ByteBuffer[] mBuffers;
+        int mRows;
+        long mLastEpochNanos = Long.MIN_VALUE;
+
+        public Writer(Path file, List<String> names) throws IOException {
+            mFile = file;
+            mNames = new ArrayList<>(names);
+            mColumnFiles = new Path[names.size() + 1];
+            mChannels = new FileChannel[names.size() + 1];
+            mBuffers = new ByteBuffer[names.size() + 1];
+            try {
+                for (int c = 0; c < mColumnFiles.length; c++) {
+                    mColumnFiles[c] = file.resolveSibling(file.getFileName() + "." + c + ".tmp");
+                    mChannels[c] = FileChannel.open(mColumnFiles[c], StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    mBuffers[c] = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                }
+            } catch (Throwable e) {
+                try {
+                    abort();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Appends one row; {@code values} holds one value per column and may be reused by the caller.
+         */
+        public void add(long epochNanos, double[] values) throws IOException {
+            check(values.length == mNames.size());
+            check(epochNanos >= mLastEpochNanos, "Rows must be added in ascending order");
+            check(mRows < Integer.MAX_VALUE / Double.BYTES, "Too many rows to map");
+            mLastEpochNanos = epochNanos;
+            if (!mBuffers[0].hasRemaining()) {
+                for (int c = 0; c < mBuffers.length; c++) {
+                    flush(mChannels[c], mBuffers[c]);
+                }
+            }
+            mBuffers[0].putLong(epochNanos);
+            for (int c = 0; c < values.length; c++) {
+                mBuffers[c + 1].putDouble(values[c]);
+            }
+            mRows++;
+        }
+
+        public int size() {
+            return mRows;
+        }
+
+        /**
+         * Discards the rows added so far: closes and deletes the column files without writing the store file. Also
+         * used by the constructor to release the columns it opened before failing.
+         */
+        public void abort() throws IOException {
+            for (int c = 0; c < mChannels.length && mChannels[c] != null; c++) {
+                try {
+                    mChannels[c].close();
+                } finally {
+                    Files.deleteIfExists(mColumnFiles[c]);
+                }
+            }
+        }
+
+        @Override public void close() throws IOException {
+            try (FileChannel channel = FileChannel.open(mFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(channel, header(mNames, mRows));
+                for (int c = 0; c < mChannels.length; c++) {
+                    flush(mChannels[c], mBuffers[c]);
+                    long size = mChannels[c].size();
+                    long position = 0;
+                    while (position < size) {
+                        position += mChannels[c].transferTo(position, size - position, channel);
+                    }
+                }
+            } finally {
+                for (int c = 0; c < mChannels.length; c++) {
+                    mChannels[c].close();
+                    Files.deleteIfExists(mColumnFiles[c]);
+                }
+            }
+        }
+    }
+
+    static class MappedDoubleSeries extends DoubleSeries {
+        final LongBuffer mInstantBuffer;
+        final DoubleBuffer mValueBuffer;
+
+        MappedDoubleSeries(LongBuffer instants, DoubleBuffer values, int size, String name) {
+            super(null, null, size, name);
+            mInstantBuffer = instants;
+            mValueBuffer = values;
+            mShared = true;
+        }
+
+        @Override double valueAt(int index) {
+            return mValueBuffer.get(mValueOffset + index * mStep);
+        }
+
+        @Override long instantAt(int index) {
+            return mInstantBuffer.get(mInstantOffset + index * mStep);
+        }
+
+        @Override DoubleSeries view(int instantFrom, int valueFrom, int size, int step) {
+            MappedDoubleSeries series = new MappedDoubleSeries(mInstantBuffer, mValueBuffer, size, mName);
+            series.mInstantOffset = mInstantOffset + instantFrom * mStep;
+            series.mValueOffset = mValueOffset + valueFrom * mStep;
+            series.mStep = step * mStep;
+            return series;
+        }
+
+        @Override public void add(double value, long epochNanos) {
+            throw new UnsupportedOperationException("Mapped series are read-only");
+        }
+
+        /**
+         * Returns a heap copy of the values, there is no backing array to share.
+         */
+        @Override public double[] sharedValues() {
+            return toArray();
+        }
+    }
+
+    static class MappedMultipleDoubleSeries extends MultipleDoubleSeries {
+        final LongBuffer mInstantBuffer;
+        final DoubleBuffer[] mValueBuffers;
+
+        MappedMultipleDoubleSeries(List<String> names, LongBuffer instants, DoubleBuffer[] values, int size) {
+            super(names);
+            mInstants = null;
+            mColumns = null;
+            mInstantBuffer = instants;
+            mValueBuffers = values;
+            mSize = size;
+        }
+
+        @Override public DoubleSeries getColumn(int index) {
+            return new MappedDoubleSeries(mInstantBuffer, mValueBuffers[index], mSize, mNames.get(index));
+        }
+
+        @Override public double getValue(int row, int column) {
+            checkRow(row);
+            return mValueBuffers[column].get(row);
+        }
+
+        @Override public long getEpochNanos(int row) {
+            checkRow(row);
+            return mInstantBuffer.get(row);
+        }
+
+        @Override long epochNanosAt(int index) {
+            return mInstantBuffer.get(index);
+        }
+
+        @Override public Entry<List<Double>> get(int index) {
+            List<Double> row = new ArrayList<>(mValueBuffers.length);
+            for (int c = 0; c < mValueBuffers.length; c++) {
+                row.add(getValue(index, c));
+            }
+            return new Entry<>(row, getInstant(index));
+        }
+
+        @Override public boolean isAscending() {
+            return mSize <= 1 || mInstantBuffer.get(0) < mInstantBuffer.get(1);
+        }
+
+        @Override public void add(List<Double> item, Instant instant) {
+            throw new UnsupportedOperationException("Mapped series are read-only");
+        }
+
+        @Override public void addSeries(DoubleSeries series, TimeSeries.JoinType join) {
+            throw new UnsupportedOperationException("Mapped series are read-only");
+        }
+    }
+}
@@ -1,64 +1,163 @@
 package org.lst.trading.lib.series;
 
+import java.time.Instant;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toList;
+import static org.lst.trading.lib.util.Util.check;
 
+/**
+ * Price matrix stored column-major: one sorted {@code long[]} of epoch nanos shared by all columns and one
+ * {@code double[]} per instrument.
+ * <p>
+ * Rows are exposed as {@code Entry<List<Double>>} for compatibility only; hot paths should use
+ * {@link #getValue(int, int)}, {@link #getEpochNanos(int)} and {@link #getColumn(String)}.
+ */
 public class MultipleDoubleSeries extends TimeSeries<List<Double>> {
+    private static final int DEFAULT_CAPACITY = 16;
+
     List<String> mNames;
+    long[] mInstants;
+    double[][] mColumns;
+    int mSize;
 
     public MultipleDoubleSeries(Collection<String> names) {
+        super(null);
         mNames = new ArrayList<>(names);
+        mInstants = new long[DEFAULT_CAPACITY];
+        mColumns = new double[mNames.size()][DEFAULT_CAPACITY];
     }
 
     public MultipleDoubleSeries(List<DoubleSeries> series) {
-        mNames = new ArrayList<>();
-        for (int i = 0; i < series.size(); i++) {
-            if (i == 0) {
-                _init(series.get(i));
-            } else {
-                addSeries(series.get(i));
-            }
+        this(series, JoinType.INNER);
+    }
+
+    /**
+     * Aligns all {@code series} in a single k-way merge, see {@link #addSeries(DoubleSeries, JoinType)} for the
+     * join semantics; the first series is the left side.
+     */
+    public MultipleDoubleSeries(List<DoubleSeries> series, JoinType join) {
+        this(series, KWayJoin.of(series.toArray(new DoubleSeries[series.size()]), join));
+    }
+
+    /**
+     * Like {@link #MultipleDoubleSeries(List, JoinType)}, but splits large inputs into time chunks merged in
+     * parallel on {@code pool}.
+     */
+    public MultipleDoubleSeries(List<DoubleSeries> series, JoinType join, ForkJoinPool pool) {
+        this(series, KWayJoin.of(series.toArray(new DoubleSeries[series.size()]), join, pool));
+    }
+
+    private MultipleDoubleSeries(List<DoubleSeries> series, KWayJoin join) {
+        super(null);
+        mNames = new ArrayList<>(series.size());
+        for (DoubleSeries s : series) {
+            mNames.add(s.mName);
         }
+        mInstants = join.mInstants;
+        mColumns = join.mColumns;
+        mSize = join.mSize;
     }
 
     public MultipleDoubleSeries(DoubleSeries... series) {
-        mNames = new ArrayList<>();
-        for (int i = 0; i < series.length; i++) {
-            if (i == 0) {
-                _init(series[i]);
-            } else {
-                addSeries(series[i]);
-            }
-        }
+        this(Arrays.asList(series));
     }
 
     void _init(DoubleSeries series) {
-        mData = new ArrayList<>();
-        for (Entry<Double> entry : series) {
-            LinkedList<Double> list = new LinkedList<>();
-            list.add(entry.mT);
-            add(new Entry<>(list, entry.mInstant));
+        mSize = series.mSize;
+        mInstants = new long[mSize];
+        mColumns = new double[][]{new double[mSize]};
+        for (int i = 0; i < mSize; i++) {
+            mInstants[i] = series.instantAt(i);
+            mColumns[0][i] = series.valueAt(i);
         }
         mNames.add(series.mName);
     }
 
+    /**
+     * Adds a column, keeping only the instants present in both this matrix and {@code series}.
+     */
     public void addSeries(DoubleSeries series) {
-        mData = merge(this, series, (l, t) -> {
-            l.add(t);
-            return l;
-        }).mData;
+        addSeries(series, JoinType.INNER);
+    }
+
+    /**
+     * Adds a column aligned according to {@code join}, with this matrix as the left side. Missing values are
+     * {@code NaN}. Existing columns are reused as-is when every row is kept.
+     */
+    public void addSeries(DoubleSeries series, JoinType join) {
+        if (mColumns.length == 0) {
+            _init(series);
+            return;
+        }
+
+        trimToSize();
+        JoinIndex index = JoinIndex.of(this, series, join);
+        int size = index.mSize;
+
+        double[][] columns = Arrays.copyOf(mColumns, mColumns.length + 1);
+        if (!index.keepsAllLeftRows(mSize)) {
+            for (int c = 0; c < mColumns.length; c++) {
+                columns[c] = gather(mColumns[c], index.mLeft, size);
+            }
+            mInstants = index.mInstants.length == size ? index.mInstants : Arrays.copyOf(index.mInstants, size);
+        }
+        columns[mColumns.length] = new double[size];
+        for (int k = 0; k < size; k++) {
+            columns[mColumns.length][k] = index.mRight[k] < 0 ? Double.NaN : series.valueAt(index.mRight[k]);
+        }
+
+        mColumns = columns;
+        mSize = size;
         mNames.add(series.mName);
     }
 
+    private static double[] gather(double[] column, int[] rows, int size) {
+        double[] values = new double[size];
+        for (int k = 0; k < size; k++) {
+            values[k] = rows[k] < 0 ? Double.NaN : column[rows[k]];
+        }
+        return values;
+    }
+
+    /**
+     * Returns a view of the named column which shares storage with this matrix. The view holds the rows present when
+     * it was taken; reading it never modifies the matrix, so columns can be read from several threads.
+     */
     public DoubleSeries getColumn(String name) {
-        int index = getNames().indexOf(name);
-        List<Entry<Double>> entries = mData.stream().map(t -> new Entry<Double>(t.getItem().get(index), t.getInstant())).collect(toList());
-        return new DoubleSeries(entries, name);
+        int index = indexOf(name);
+        check(index >= 0, "No column " + name);
+        return getColumn(index);
+    }
+
+    public DoubleSeries getColumn(int index) {
+        return DoubleSeries.view(mInstants, mColumns[index], mSize, mNames.get(index));
+    }
+
+    /**
+     * Returns a read-only view of {@code length} rows starting at {@code offset}, sharing storage with this matrix.
+     */
+    public MultipleDoubleSeries window(int offset, int length) {
+        check(offset >= 0 && length >= 0 && offset + length <= mSize);
+        return new Window(this, offset, length);
+    }
+
+    /**
+     * Returns a read-only view of the rows in {@code [from, to)}.
+     */
+    @Override public MultipleDoubleSeries slice(Instant from, Instant to) {
+        int start = lowerBound(toEpochNanos(from));
+        return window(start, Math.max(start, lowerBound(toEpochNanos(to))) - start);
     }
 
     public int indexOf(String name) {
@@ -69,13 +168,181 @@ public class MultipleDoubleSeries extends TimeSeries<List<Double>> {
         return mNames;
     }
 
+    @Override public int size() {
+        return mSize;
+    }
+
+    public double getValue(int row, int column) {
+        checkRow(row);
+        return mColumns[column][row];
+    }
+
+    public long getEpochNanos(int row) {
+        checkRow(row);
+        return mInstants[row];
+    }
+
+    public Instant getInstant(int row) {
+        return ofEpochNanos(getEpochNanos(row));
+    }
+
+    @Override long epochNanosAt(int index) {
+        return mInstants[index];
+    }
+
+    @Override public boolean add(Entry<List<Double>> entry) {
+        add(entry.getItem(), entry.getInstant());
+        return true;
+    }
+
+    @Override public void add(List<Double> item, Instant instant) {
+        check(item.size() == mColumns.length);
+
+        if (mSize == mInstants.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, mSize + (mSize >> 1));
+            mInstants = Arrays.copyOf(mInstants, capacity);
+            for (int c = 0; c < mColumns.length; c++) {
+                mColumns[c] = Arrays.copyOf(mColumns[c], capacity);
+            }
+        }
+        mInstants[mSize] = toEpochNanos(instant);
+        for (int c = 0; c < mColumns.length; c++) {
+            mColumns[c][mSize] = item.get(c);
+        }
+        mSize++;
+    }
+
+    @Override public Entry<List<Double>> get(int index) {
+        checkRow(index);
+        return new Entry<>(new Row(mColumns, index), ofEpochNanos(mInstants[index]));
+    }
+
+    @Override public Stream<Entry<List<Double>>> stream() {
+        return IntStream.range(0, mSize).mapToObj(this::get);
+    }
+
+    @Override public Stream<Entry<List<Double>>> reversedStream() {
+        return IntStream.range(1, mSize + 1).mapToObj(i -> get(mSize - i));
+    }
+
+    @Override public Iterator<Entry<List<Double>>> iterator() {
+        return getData().iterator();
+    }
+
+    @Override public List<Entry<List<Double>>> getData() {
+        return new AbstractRandomAccessList<Entry<List<Double>>>() {
+            @Override public Entry<List<Double>> get(int index) {
+                return MultipleDoubleSeries.this.get(index);
+            }
+
+            @Override public int size() {
+                return mSize;
+            }
+        };
+    }
+
+    @Override public boolean isAscending() {
+        return mSize <= 1 || mInstants[0] < mInstants[1];
+    }
+
+    private void trimToSize() {
+        if (mInstants.length != mSize) {
+            mInstants = Arrays.copyOf(mInstants, mSize);
+            for (int c = 0; c < mColumns.length; c++) {
+                mColumns[c] = Arrays.copyOf(mColumns[c], mSize);
+            }
+        }
+    }
+
+    void checkRow(int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + mSize);
+        }
+    }
+
+    private static class Window extends MultipleDoubleSeries {
+        final MultipleDoubleSeries mSource;
+        final int mOffset;
+
+        Window(MultipleDoubleSeries source, int offset, int length) {
+            super(Collections.<String>emptyList());
+            mNames = source.mNames;
+            mInstants = null;
+            mColumns = null;
+            mSource = source;
+            mOffset = offset;
+            mSize = length;
+        }
+
+        @Override public MultipleDoubleSeries window(int offset, int length) {
+            check(offset >= 0 && length >= 0 && offset + length <= mSize);
+            return mSource.window(mOffset + offset, length);
+        }
+
+        @Override public DoubleSeries getColumn(int index) {
+            return mSource.getColumn(index).window(mOffset, mSize);
+        }
+
+        @Override public double getValue(int row, int column) {
+            checkRow(row);
+            return mSource.getValue(mOffset + row, column);
+        }
+
+        @Override public long getEpochNanos(int row) {
+            checkRow(row);
+            return mSource.getEpochNanos(mOffset + row);
+        }
+
+        @Override long epochNanosAt(int index) {
+            return mSource.epochNanosAt(mOffset + index);
+        }
+
+        @Override public Entry<List<Double>> get(int index) {
+            checkRow(index);
+            return mSource.get(mOffset + index);
+        }
+
+        @Override public boolean isAscending() {
+            return mSource.isAscending();
+        }
+
+        @Override public void add(List<Double> item, Instant instant) {
+            throw new UnsupportedOperationException("Windows are read-only");
+        }
+
+        @Override public void addSeries(DoubleSeries series, JoinType join) {
+            throw new UnsupportedOperationException("Windows are read-only");
+        }
+    }
+
+    private abstract static class AbstractRandomAccessList<E> extends AbstractList<E> implements RandomAccess {
+    }
+
+    private static class Row extends AbstractRandomAccessList<Double> {
+        final double[][] mColumns;
+        final int mRow;
+
+        Row(double[][] columns, int row) {
+            mColumns = columns;
+            mRow = row;
+        }
+
+        @Override public Double get(int index) {
+            return mColumns[index][mRow];
+        }
+
+        @Override public int size() {
+            return mColumns.length;
+        }
+    }
+
     @Override public String toString() {
-        return mData.isEmpty() ? "MultipleDoubleSeries{empty}" :
+        return isEmpty() ? "MultipleDoubleSeries{empty}" :
             "MultipleDoubleSeries{" +
                 "mNames={" + mNames.stream().collect(joining(", ")) +
-                ", from=" + mData.get(0).getInstant() +
-                ", to=" + mData.get(mData.size() - 1).getInstant() +
-                ", size=" + mData.size() +
+                ", from=" + getInstant(0) +
+                ", to=" + getInstant(mSize - 1) +
+                ", size=" + mSize +
                 '}';
     }
 }
@@ -0,0 +1,114 @@
+package org.lst.trading.lib.series;
+
+import java.time.Duration;
+import org.lst.trading.lib.model.Bar;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Streaming aggregation of ticks or finer bars into bars of a fixed period, aligned to the epoch (a 5 minute bar
+ * starts at :00, :05, ...). Only the bar being built is kept, so memory is constant; a bar is passed to the
+ * {@link Sink} once the first input of a later period arrives, or on {@link #flush()}.
+ * <p>
+ * Inputs must arrive in ascending time order. The VWAP is volume weighted, or the plain average of the inputs' prices
+ * while no volume has been seen.
+ */
+public class Resampler {
+    public interface Sink {
+        void add(double open, double high, double low, double close, long volume, double wap, long epochNanos);
+    }
+
+    final long mPeriod;
+    final Sink mSink;
+
+    long mStart = Long.MIN_VALUE;
+    boolean mOpen;
+    double mOpenPrice;
+    double mHigh;
+    double mLow;
+    double mClose;
+    long mVolume;
+    double mPriceVolume;
+    double mPriceSum;
+    int mCount;
+
+    public Resampler(Duration period, Sink sink) {
+        mPeriod = period.toNanos();
+        check(mPeriod > 0);
+        mSink = sink;
+    }
+
+    public static BarSeries resample(DoubleSeries ticks, Duration period) {
+        BarSeries bars = new BarSeries(ticks.getName(), period);
+        Resampler resampler = new Resampler(period, bars::add);
+        for (int i = 0; i < ticks.size(); i++) {
+            resampler.add(ticks.valueAt(i), 0, ticks.instantAt(i));
+        }
+        resampler.flush();
+        return bars;
+    }
+
+    public static BarSeries resample(BarSeries bars, Duration period) {
+        BarSeries result = new BarSeries(bars.getName(), period);
+        Resampler resampler = new Resampler(period, result::add);
+        for (int i = 0; i < bars.size(); i++) {
+            resampler.add(bars.mOpen[i], bars.mHigh[i], bars.mLow[i], bars.mClose[i], (long) bars.mVolume[i], bars.mWap[i], bars.mInstants[i]);
+        }
+        resampler.flush();
+        return result;
+    }
+
+    /**
+     * Adds a trade or quote.
+     */
+    public void add(double price, long volume, long epochNanos) {
+        add(price, price, price, price, volume, price, epochNanos);
+    }
+
+    public void add(Bar bar) {
+        add(bar.getOpen(), bar.getHigh(), bar.getLow(), bar.getClose(), bar.getVolume(), bar.getWAP(), TimeSeries.toEpochNanos(bar.getStart()));
+    }
+
+    /**
+     * Adds a finer bar starting at {@code epochNanos}; its WAP is weighted by its volume.
+     */
+    public void add(double open, double high, double low, double close, long volume, double wap, long epochNanos) {
+        long start = epochNanos - Math.floorMod(epochNanos, mPeriod);
+        check(start >= mStart, "Input is not ascending");
+        if (start != mStart) {
+            flush();
+            mStart = start;
+        }
+
+        if (!mOpen) {
+            mOpen = true;
+            mOpenPrice = open;
+            mHigh = high;
+            mLow = low;
+        } else {
+            mHigh = Math.max(mHigh, high);
+            mLow = Math.min(mLow, low);
+        }
+        mClose = close;
+        mVolume += volume;
+        mPriceVolume += wap * volume;
+        mPriceSum += wap;
+        mCount++;
+    }
+
+    /**
+     * Emits the bar being built, if any.
+     */
+    public void flush() {
+        if (!mOpen) {
+            return;
+        }
+        double wap = mVolume > 0 ? mPriceVolume / mVolume : mPriceSum / mCount;
+        mSink.add(mOpenPrice, mHigh, mLow, mClose, mVolume, wap, mStart);
+        mOpen = false;
+        mVolume = 0;
+        mPriceVolume = 0;
+        mPriceSum = 0;
+        mCount = 0;
+    }
+}
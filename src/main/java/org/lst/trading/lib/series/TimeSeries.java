@@ -13,6 +13,8 @@ import java.util.stream.Stream;
 import static org.lst.trading.lib.util.Util.check;
 
 public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
+    static final long NANOS_PER_SECOND = 1_000_000_000L;
+
     public static class Entry<T> {
         T mT;
         Instant mInstant;
@@ -72,7 +74,7 @@ public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
     }
 
     public boolean isEmpty() {
-        return mData.isEmpty();
+        return size() == 0;
     }
 
     public boolean add(Entry<T> tEntry) {
@@ -89,7 +91,8 @@ public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
 
     public Stream<Entry<T>> reversedStream() {
         check(!(mData instanceof LinkedList));
-        return IntStream.range(1, mData.size() + 1).mapToObj(i -> mData.get(mData.size() - i));
+        int size = size();
+        return IntStream.range(1, size + 1).mapToObj(i -> get(size - i));
     }
 
     @Override public Iterator<Entry<T>> iterator() {
@@ -104,6 +107,94 @@ public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
         return mData.get(index);
     }
 
+    long epochNanosAt(int index) {
+        return toEpochNanos(get(index).mInstant);
+    }
+
+    /**
+     * Returns the elements in {@code [from, to)} as a view, found by binary search in an ascending series.
+     */
+    public TimeSeries<T> slice(Instant from, Instant to) {
+        int start = lowerBound(toEpochNanos(from));
+        return new TimeSeries<>(getData().subList(start, Math.max(start, lowerBound(toEpochNanos(to)))));
+    }
+
+    /**
+     * Index of the element at {@code instant}, or -1.
+     */
+    public int indexOf(Instant instant) {
+        long epochNanos = toEpochNanos(instant);
+        int index = lowerBound(epochNanos);
+        return index < size() && epochNanosAt(index) == epochNanos ? index : -1;
+    }
+
+    /**
+     * Index of the last element at or before {@code instant}, or -1.
+     */
+    public int floorIndex(Instant instant) {
+        long epochNanos = toEpochNanos(instant);
+        int index = lowerBound(epochNanos);
+        return index < size() && epochNanosAt(index) == epochNanos ? index : index - 1;
+    }
+
+    /**
+     * Index of the first element at or after {@code instant}, or -1.
+     */
+    public int ceilingIndex(Instant instant) {
+        int index = lowerBound(toEpochNanos(instant));
+        return index < size() ? index : -1;
+    }
+
+    /**
+     * Last element at or before {@code instant}, or null.
+     */
+    public Entry<T> floor(Instant instant) {
+        int index = floorIndex(instant);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * First element at or after {@code instant}, or null.
+     */
+    public Entry<T> ceiling(Instant instant) {
+        int index = ceilingIndex(instant);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * Index of the first element at or after {@code epochNanos} in an ascending series, {@code size()} if none.
+     */
+    int lowerBound(long epochNanos) {
+        check(isAscending());
+        int low = 0, high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochNanosAt(mid) < epochNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * How {@link #merge} aligns two series.
+     */
+    public enum JoinType {
+        /** Only instants present in both series. */
+        INNER,
+        /** Every instant of the left series; the right value only where its instant matches exactly. */
+        LEFT_OUTER,
+        /**
+         * Every instant of either series, each side carrying its last value forward; a side that has not started yet
+         * has no value.
+         */
+        FULL_OUTER_FORWARD_FILL,
+        /** Every instant of the left series with the latest right value at or before it. */
+        AS_OF
+    }
+
     public interface MergeFunction<T, F> {
         F merge(T t1, T t2);
     }
@@ -114,7 +205,7 @@ public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
 
     public <F> TimeSeries<F> map(Function<T, F> f) {
         List<Entry<F>> newEntries = new ArrayList<>(size());
-        for (Entry<T> entry : mData) {
+        for (Entry<T> entry : this) {
             newEntries.add(new Entry<>(f.apply(entry.mT), entry.mInstant));
         }
         return new TimeSeries<>(newEntries);
@@ -139,7 +230,7 @@ public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
     }
 
     public TimeSeries<T> reverse() {
-        ArrayList<Entry<T>> entries = new ArrayList<>(mData);
+        ArrayList<Entry<T>> entries = new ArrayList<>(getData());
         Collections.reverse(entries);
         return new TimeSeries<>(entries);
     }
@@ -150,59 +241,38 @@ public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
 
     public TimeSeries<T> lag(int k, boolean addEmpty, T emptyVal) {
         check(k > 0);
-        check(mData.size() >= k);
+        check(size() >= k);
 
-        ArrayList<Entry<T>> entries = new ArrayList<>(addEmpty ? mData.size() : mData.size() - k);
+        ArrayList<Entry<T>> entries = new ArrayList<>(addEmpty ? size() : size() - k);
         if (addEmpty) {
             for (int i = 0; i < k; i++) {
-                entries.add(new Entry<>(emptyVal, mData.get(i).mInstant));
+                entries.add(new Entry<>(emptyVal, get(i).mInstant));
             }
         }
 
         for (int i = k; i < size(); i++) {
-            entries.add(new Entry<>(mData.get(i - k).getItem(), mData.get(i).getInstant()));
+            entries.add(new Entry<>(get(i - k).getItem(), get(i).getInstant()));
         }
 
         return new TimeSeries<>(entries);
     }
 
     public static <T1, T2, F> TimeSeries<F> merge(TimeSeries<T1> t1, TimeSeries<T2> t2, MergeFunction2<T1, T2, F> f) {
-        check(t1.isAscending());
-        check(t2.isAscending());
-
-        Iterator<Entry<T1>> i1 = t1.iterator();
-        Iterator<Entry<T2>> i2 = t2.iterator();
-
-        List<Entry<F>> newEntries = new ArrayList<>();
-
-        while (i1.hasNext() && i2.hasNext()) {
-            Entry<T1> n1 = i1.next();
-            Entry<T2> n2 = i2.next();
-
-            while (!n2.mInstant.equals(n1.mInstant)) {
-                if (n1.mInstant.isBefore(n2.mInstant)) {
-                    if(!i1.hasNext()) {
-                        break;
-                    }
-                    while (i1.hasNext()) {
-                        n1 = i1.next();
-                        if (!n1.mInstant.isBefore(n2.mInstant)) {
-                            break;
-                        }
-                    }
-                } else if (n2.mInstant.isBefore(n1.mInstant)) {
-                    while (i2.hasNext()) {
-                        n2 = i2.next();
-                        if (!n2.mInstant.isBefore(n1.mInstant)) {
-                            break;
-                        }
-                    }
-                }
-            }
+        return merge(t1, t2, JoinType.INNER, f);
+    }
 
-            if (n2.mInstant.equals(n1.mInstant)) {
-                newEntries.add(new Entry<F>(f.merge(n1.mT, n2.mT), n1.mInstant));
-            }
+    /**
+     * Aligns two ascending series according to {@code join}. A side without a value for a row is passed to
+     * {@code f} as {@code null}.
+     */
+    public static <T1, T2, F> TimeSeries<F> merge(TimeSeries<T1> t1, TimeSeries<T2> t2, JoinType join, MergeFunction2<T1, T2, F> f) {
+        JoinIndex index = JoinIndex.of(t1, t2, join);
+
+        List<Entry<F>> newEntries = new ArrayList<>(index.mSize);
+        for (int k = 0; k < index.mSize; k++) {
+            T1 v1 = index.mLeft[k] < 0 ? null : t1.get(index.mLeft[k]).mT;
+            T2 v2 = index.mRight[k] < 0 ? null : t2.get(index.mRight[k]).mT;
+            newEntries.add(new Entry<F>(f.merge(v1, v2), ofEpochNanos(index.mInstants[k])));
         }
 
         return new TimeSeries<>(newEntries);
@@ -212,12 +282,20 @@ public class TimeSeries<T> implements Iterable<TimeSeries.Entry<T>> {
         return TimeSeries.<T, T, F>merge(t1, t2, f::merge);
     }
 
+    public static long toEpochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+    }
+
+    public static Instant ofEpochNanos(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+    }
+
     @Override public String toString() {
-        return mData.isEmpty() ? "TimeSeries{empty}" :
+        return isEmpty() ? "TimeSeries{empty}" :
             "TimeSeries{" +
-                "from=" + mData.get(0).getInstant() +
-                ", to=" + mData.get(size() - 1).getInstant() +
-                ", size=" + mData.size() +
+                "from=" + get(0).getInstant() +
+                ", to=" + get(size() - 1).getInstant() +
+                ", size=" + size() +
                 '}';
     }
 }
@@ -0,0 +1,42 @@
+package org.lst.trading.lib.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits the indexes {@code [0, size)} into contiguous ranges processed in parallel, for banks that update many
+ * independent pairs per tick. Ranges hold at least {@link #MIN_CHUNK} indexes, fewer do not pay for the task.
+ */
+public final class ParallelRanges {
+    static final int MIN_CHUNK = 4096;
+
+    public interface Range {
+        void run(int from, int to);
+    }
+
+    private ParallelRanges() {
+    }
+
+    /**
+     * Runs {@code range} over {@code [0, size)} in up to {@code pool.getParallelism()} chunks and waits for them, or
+     * on the calling thread if there are too few indexes to split.
+     */
+    public static void run(ForkJoinPool pool, int size, Range range) {
+        int chunks = Math.min(pool.getParallelism(), size / MIN_CHUNK);
+        if (chunks <= 1) {
+            range.run(0, size);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) size * c / chunks);
+            int to = (int) ((long) size * (c + 1) / chunks);
+            tasks.add(pool.submit(() -> range.run(from, to)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+}
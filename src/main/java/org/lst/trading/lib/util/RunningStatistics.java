@@ -0,0 +1,164 @@
+package org.lst.trading.lib.util;
+
+/**
+ * Performance statistics updated in O(1) per account value and per closed trade, so live runs and backtests can report
+ * current metrics without keeping or rescanning the equity history.
+ * <p>
+ * Returns, Sharpe ratio and drawdown follow {@link Statistics}: returns are period over period, ratios are annualized
+ * with 250 periods, variance is the sample variance (Welford) and the drawdown starts from a peak of
+ * {@link Double#MIN_VALUE}.
+ */
+public class RunningStatistics {
+    private static final int PERIODS_PER_YEAR = 250;
+
+    long mCount;
+    double mFirst = Double.NaN;
+    double mLast = Double.NaN;
+    double mMean;
+    double mM2;
+    double mDownsideSquares;
+    double mPeak = Double.MIN_VALUE;
+    double mMaxDrawdown = Double.MAX_VALUE;
+    double mMaxDrawdownPercent = Double.MAX_VALUE;
+
+    int mTrades;
+    int mWins;
+    double mGrossProfit;
+    double mGrossLoss;
+
+    /**
+     * Adds the next account value.
+     */
+    public void add(double value) {
+        if (mCount++ == 0) {
+            mFirst = value;
+        } else {
+            double r = value / mLast - 1;
+            long n = mCount - 1;
+            double delta = r - mMean;
+            mMean += delta / n;
+            mM2 += delta * (r - mMean);
+            if (r < 0) {
+                mDownsideSquares += r * r;
+            }
+        }
+        mLast = value;
+
+        mMaxDrawdown = Math.min(value - mPeak, mMaxDrawdown);
+        mMaxDrawdownPercent = Math.min(value / mPeak - 1, mMaxDrawdownPercent);
+        mPeak = Math.max(mPeak, value);
+    }
+
+    /**
+     * Adds the P/L of a closed trade.
+     */
+    public void addTrade(double pl) {
+        mTrades++;
+        if (pl > 0) {
+            mWins++;
+            mGrossProfit += pl;
+        } else {
+            mGrossLoss -= pl;
+        }
+    }
+
+    public void reset() {
+        mCount = 0;
+        mFirst = Double.NaN;
+        mLast = Double.NaN;
+        mMean = 0;
+        mM2 = 0;
+        mDownsideSquares = 0;
+        mPeak = Double.MIN_VALUE;
+        mMaxDrawdown = Double.MAX_VALUE;
+        mMaxDrawdownPercent = Double.MAX_VALUE;
+        mTrades = 0;
+        mWins = 0;
+        mGrossProfit = 0;
+        mGrossLoss = 0;
+    }
+
+    /**
+     * Number of account values added.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    public double getLast() {
+        return mLast;
+    }
+
+    /**
+     * Mean of the returns, NaN without returns.
+     */
+    public double getMean() {
+        return mCount > 1 ? mMean : Double.NaN;
+    }
+
+    /**
+     * Sample variance of the returns, 0 for a single return and NaN without returns.
+     */
+    public double getVariance() {
+        if (mCount <= 1) {
+            return Double.NaN;
+        }
+        return mCount > 2 ? mM2 / (mCount - 2) : 0;
+    }
+
+    public double getSharpe() {
+        return getMean() / Math.sqrt(getVariance()) * Math.sqrt(PERIODS_PER_YEAR);
+    }
+
+    /**
+     * Like {@link #getSharpe()} but only penalizes losing periods: the mean return over the root mean square of the
+     * negative returns.
+     */
+    public double getSortino() {
+        return getMean() / Math.sqrt(mDownsideSquares / (mCount - 1)) * Math.sqrt(PERIODS_PER_YEAR);
+    }
+
+    public double getMaxDrawdown() {
+        return mMaxDrawdown;
+    }
+
+    public double getMaxDrawdownPercent() {
+        return mMaxDrawdownPercent;
+    }
+
+    /**
+     * Return from the first to the last account value.
+     */
+    public double getReturn() {
+        return mLast / mFirst - 1;
+    }
+
+    public double getAnnualizedReturn() {
+        return getReturn() * PERIODS_PER_YEAR / mCount;
+    }
+
+    /**
+     * Annualized return over the max drawdown in percent, infinite if there was no drawdown.
+     */
+    public double getCalmar() {
+        return getAnnualizedReturn() / Math.max(-mMaxDrawdownPercent, 0);
+    }
+
+    public int getTradeCount() {
+        return mTrades;
+    }
+
+    /**
+     * Share of closed trades with a positive P/L, NaN without trades.
+     */
+    public double getWinRate() {
+        return mTrades == 0 ? Double.NaN : (double) mWins / mTrades;
+    }
+
+    /**
+     * Gross profit over gross loss of the closed trades, infinite if no trade lost.
+     */
+    public double getProfitFactor() {
+        return mTrades == 0 ? Double.NaN : mGrossProfit / mGrossLoss;
+    }
+}
@@ -0,0 +1,117 @@
+package org.lst.trading.main;
+
+import io.codera.quant.context.TradingContext;
+import io.codera.quant.strategy.AbstractStrategy;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.lst.trading.lib.backtest.BackTest;
+import org.lst.trading.lib.backtest.BackTestTradingContext;
+import org.lst.trading.lib.model.Order;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+/**
+ * Measures raw {@link BackTest} throughput on a synthetic random walk with a strategy that holds a position most of
+ * the time and trades rarely, so the engine's per-bar cost dominates. The P/L and funds histories account for 32
+ * allocated bytes per bar; anything above that is garbage.
+ * <p>
+ * Usage: {@code BackTestBenchmark [bars] [instruments] [runs]}
+ */
+public class BackTestBenchmark {
+
+  public static void main(String[] args) {
+    int bars = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    int instruments = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    MultipleDoubleSeries prices = randomWalk(bars, instruments);
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    for (int run = 0; run < runs; run++) {
+      long allocated = allocatedBytes(threads);
+      long start = System.nanoTime();
+
+      BackTest backTest = new BackTest(1_000_000, prices);
+      BackTest.Result result = backTest.run(new HoldingStrategy(new BackTestTradingContext(), prices.getNames()));
+
+      long elapsed = System.nanoTime() - start;
+      allocated = allocatedBytes(threads) - allocated;
+      System.out.printf("run %d: %.1fM bars/s, %.1f bytes/bar, pl=%.2f%n",
+          run, bars * 1e3 / elapsed, (double) allocated / bars, result.getPl());
+    }
+  }
+
+  private static MultipleDoubleSeries randomWalk(int bars, int instruments) {
+    Random random = new Random(1);
+    List<DoubleSeries> series = new ArrayList<>(instruments);
+    for (int i = 0; i < instruments; i++) {
+      DoubleSeries s = new DoubleSeries("I" + i, bars);
+      double price = 100;
+      for (int t = 0; t < bars; t++) {
+        price *= 1 + 0.0001 * random.nextGaussian();
+        s.add(price, 60_000_000_000L * t);
+      }
+      series.add(s);
+    }
+    return new MultipleDoubleSeries(series);
+  }
+
+  private static long allocatedBytes(ThreadMXBean threads) {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  private static class HoldingStrategy extends AbstractStrategy {
+    private static final int HOLDING_BARS = 100_000;
+
+    private final List<String> instruments;
+    private final List<Order> open = new ArrayList<>();
+    private int bar;
+
+    HoldingStrategy(TradingContext tradingContext, List<String> instruments) {
+      super(tradingContext);
+      this.instruments = instruments;
+    }
+
+    @Override
+    public void onTick() {
+      if (bar++ % HOLDING_BARS != 0) {
+        return;
+      }
+      try {
+        if (open.isEmpty()) {
+          openPosition();
+        } else {
+          closePosition();
+        }
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void openPosition() throws io.codera.quant.exception.PriceNotAvailableException {
+      for (int i = 0; i < instruments.size(); i++) {
+        open.add(tradingContext.order(instruments.get(i), i % 2 == 0, 100));
+      }
+    }
+
+    @Override
+    public void closePosition() throws io.codera.quant.exception.PriceNotAvailableException {
+      for (Order order : open) {
+        tradingContext.close(order);
+      }
+      open.clear();
+    }
+
+    @Override
+    public int getLotSize(String contract, boolean buy) {
+      return 100;
+    }
+  }
+}
@@ -1,48 +1,43 @@
 package org.lst.trading.main.strategy.kalman;
 
-import org.la4j.Matrix;
-
+/**
+ * Kalman filter estimate of the relation {@code y = alpha + beta * x} between two prices. The state (alpha, beta)
+ * follows a random walk with covariance {@code delta / (1 - delta) * I} and is observed through {@code y} with
+ * variance {@code r}.
+ * <p>
+ * This is the {@link KalmanFilter} with two states and one sensor, run as a single pair of a
+ * {@link CointegrationBank}, which writes the update out on primitive state so a step allocates nothing.
+ */
 public class Cointegration {
-    double mDelta;
-    double mR;
-    KalmanFilter mFilter;
-    int mNobs = 2;
+    final CointegrationBank mBank;
 
     public Cointegration(double delta, double r) {
-        mDelta = delta;
-        mR = r;
-
-        Matrix vw = Matrix.identity(mNobs).multiply(mDelta / (1 - delta));
-        Matrix a = Matrix.identity(mNobs);
-
-        Matrix x = Matrix.zero(mNobs, 1);
-
-        mFilter = new KalmanFilter(mNobs, 1);
-        mFilter.setUpdateMatrix(a);
-        mFilter.setState(x);
-        mFilter.setStateCovariance(Matrix.zero(mNobs, mNobs));
-        mFilter.setUpdateCovariance(vw);
-        mFilter.setMeasurementCovariance(Matrix.constant(1, 1, r));
+        mBank = new CointegrationBank(delta, r, new int[]{0}, new int[]{1});
     }
 
     public void step(double x, double y) {
-        mFilter.setExtractionMatrix(Matrix.from1DArray(1, 2, new double[]{1, x}));
-        mFilter.step(Matrix.constant(1, 1, y));
+        mBank.step(0, x, y);
     }
 
     public double getAlpha() {
-        return mFilter.getState().getRow(0).get(0);
+        return mBank.getAlpha(0);
     }
 
     public double getBeta() {
-        return mFilter.getState().getRow(1).get(0);
+        return mBank.getBeta(0);
     }
 
+    /**
+     * Variance of the last prediction error.
+     */
     public double getVariance() {
-        return mFilter.getInnovationCovariance().get(0, 0);
+        return mBank.getVariance(0);
     }
 
+    /**
+     * Error of the last prediction of {@code y}.
+     */
     public double getError() {
-        return mFilter.getInnovation().get(0, 0);
+        return mBank.getError(0);
     }
 }
@@ -0,0 +1,131 @@
+package org.lst.trading.main.strategy.kalman;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.lst.trading.lib.util.ParallelRanges;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * Independent {@link Cointegration} filters for many pairs, advanced together. Pair {@code p} estimates
+ * {@code y = alpha + beta * x} with {@code x} read from column {@code xColumns[p]} and {@code y} from column
+ * {@code yColumns[p]} of the price vector.
+ * <p>
+ * State, covariance and innovation are kept in structure of arrays layout, one array per quantity indexed by pair, so
+ * {@link #update(double[])} walks every array sequentially and allocates nothing. {@link #update(double[],
+ * ForkJoinPool)} splits the pairs into contiguous ranges updated in parallel. The state covariance is kept as all
+ * four entries so the update follows the generic {@link KalmanFilter} exactly.
+ */
+public class CointegrationBank {
+    final double mQ;
+    final double mR;
+    final int mPairs;
+    final int[] mXColumns;
+    final int[] mYColumns;
+
+    final double[] mAlpha;
+    final double[] mBeta;
+    final double[] mP00;
+    final double[] mP01;
+    final double[] mP10;
+    final double[] mP11;
+    final double[] mError;
+    final double[] mVariance;
+
+    public CointegrationBank(double delta, double r, int[] xColumns, int[] yColumns) {
+        check(xColumns.length == yColumns.length, "xColumns and yColumns differ in length");
+        mQ = delta / (1 - delta);
+        mR = r;
+        mPairs = xColumns.length;
+        mXColumns = xColumns.clone();
+        mYColumns = yColumns.clone();
+
+        mAlpha = new double[mPairs];
+        mBeta = new double[mPairs];
+        mP00 = new double[mPairs];
+        mP01 = new double[mPairs];
+        mP10 = new double[mPairs];
+        mP11 = new double[mPairs];
+        mError = new double[mPairs];
+        mVariance = new double[mPairs];
+        Arrays.fill(mError, Double.NaN);
+        Arrays.fill(mVariance, Double.NaN);
+    }
+
+    public int getPairs() {
+        return mPairs;
+    }
+
+    /**
+     * Steps every pair with the prices of the current tick.
+     */
+    public void update(double[] prices) {
+        update(prices, 0, mPairs);
+    }
+
+    /**
+     * Steps every pair with the prices of the current tick, on {@code pool} when there are enough pairs to split.
+     */
+    public void update(double[] prices, ForkJoinPool pool) {
+        ParallelRanges.run(pool, mPairs, (from, to) -> update(prices, from, to));
+    }
+
+    private void update(double[] prices, int from, int to) {
+        for (int p = from; p < to; p++) {
+            step(p, prices[mXColumns[p]], prices[mYColumns[p]]);
+        }
+    }
+
+    /**
+     * Steps a single pair, see {@link Cointegration#step(double, double)}.
+     */
+    public void step(int pair, double x, double y) {
+        // predict: the state carries over, its covariance grows by Q
+        double p00 = mP00[pair] + mQ;
+        double p01 = mP01[pair];
+        double p10 = mP10[pair];
+        double p11 = mP11[pair] + mQ;
+
+        // observe through H = [1, x]
+        double error = y - (mAlpha[pair] + x * mBeta[pair]);
+        double hp0 = p00 + x * p10;
+        double hp1 = p01 + x * p11;
+        double variance = hp0 + x * hp1 + mR;
+
+        // update with the gain K = P H' / S
+        double inverse = 1 / variance;
+        double k0 = (p00 + p01 * x) * inverse;
+        double k1 = (p10 + p11 * x) * inverse;
+        mAlpha[pair] += k0 * error;
+        mBeta[pair] += k1 * error;
+
+        mP00[pair] = (1 - k0) * p00 - k0 * x * p10;
+        mP01[pair] = (1 - k0) * p01 - k0 * x * p11;
+        mP10[pair] = -k1 * p00 + (1 - k1 * x) * p10;
+        mP11[pair] = -k1 * p01 + (1 - k1 * x) * p11;
+        mError[pair] = error;
+        mVariance[pair] = variance;
+    }
+
+    public double getAlpha(int pair) {
+        return mAlpha[pair];
+    }
+
+    public double getBeta(int pair) {
+        return mBeta[pair];
+    }
+
+    /**
+     * Variance of the last prediction error of {@code pair}.
+     */
+    public double getVariance(int pair) {
+        return mVariance[pair];
+    }
+
+    /**
+     * Error of the last prediction of {@code y} for {@code pair}.
+     */
+    public double getError(int pair) {
+        return mError[pair];
+    }
+}
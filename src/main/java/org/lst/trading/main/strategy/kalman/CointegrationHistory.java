@@ -0,0 +1,204 @@
+package org.lst.trading.main.strategy.kalman;
+
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.lst.trading.lib.util.Util.check;
+
+/**
+ * {@link Cointegration} filter run over a whole history in one call, for research. Element {@code t} of the arrays is
+ * the filter's state after step {@code t}, i.e. what {@link Cointegration} reports after {@code step(x[t], y[t])}.
+ * <p>
+ * The filtered state covariances are kept so the Rauch-Tung-Striebel backward pass can produce smoothed estimates of
+ * alpha and beta that use the whole history; they are computed on first access. The log likelihood is the sum of the
+ * Gaussian densities of the prediction errors and can be maximized over {@code delta} and {@code r}, see
+ * {@link #fit}. The filter starts from {@code alpha = beta = 0} with no uncertainty, so the first errors mostly
+ * reflect that start; the likelihood methods take the step to start summing from.
+ */
+public class CointegrationHistory {
+    final double mQ;
+    final double[] mAlpha;
+    final double[] mBeta;
+    final double[] mError;
+    final double[] mVariance;
+    final double[] mP00;
+    final double[] mP01;
+    final double[] mP10;
+    final double[] mP11;
+    double[] mSmoothedAlpha;
+    double[] mSmoothedBeta;
+
+    private CointegrationHistory(double[] x, double[] y, double delta, double r) {
+        check(x.length == y.length, "x and y differ in length");
+        int n = x.length;
+        mQ = delta / (1 - delta);
+        mAlpha = new double[n];
+        mBeta = new double[n];
+        mError = new double[n];
+        mVariance = new double[n];
+        mP00 = new double[n];
+        mP01 = new double[n];
+        mP10 = new double[n];
+        mP11 = new double[n];
+
+        CointegrationBank bank = new CointegrationBank(delta, r, new int[]{0}, new int[]{1});
+        for (int t = 0; t < n; t++) {
+            bank.step(0, x[t], y[t]);
+            mAlpha[t] = bank.mAlpha[0];
+            mBeta[t] = bank.mBeta[0];
+            mError[t] = bank.mError[0];
+            mVariance[t] = bank.mVariance[0];
+            mP00[t] = bank.mP00[0];
+            mP01[t] = bank.mP01[0];
+            mP10[t] = bank.mP10[0];
+            mP11[t] = bank.mP11[0];
+        }
+    }
+
+    /**
+     * Filters {@code y = alpha + beta * x} over the given prices, oldest first.
+     */
+    public static CointegrationHistory filter(double[] x, double[] y, double delta, double r) {
+        return new CointegrationHistory(x, y, delta, r);
+    }
+
+    /**
+     * Filters the columns {@code x} and {@code y} of {@code prices}.
+     */
+    public static CointegrationHistory filter(MultipleDoubleSeries prices, String x, String y, double delta, double r) {
+        return filter(prices.getColumn(x).toArray(), prices.getColumn(y).toArray(), delta, r);
+    }
+
+    /**
+     * Log likelihood of the prices from step {@code from} on, without keeping the filtered history.
+     */
+    public static double logLikelihood(double[] x, double[] y, double delta, double r, int from) {
+        check(x.length == y.length, "x and y differ in length");
+        CointegrationBank bank = new CointegrationBank(delta, r, new int[]{0}, new int[]{1});
+        double logLikelihood = 0;
+        for (int t = 0; t < x.length; t++) {
+            bank.step(0, x[t], y[t]);
+            if (t >= from) {
+                logLikelihood += logDensity(bank.mError[0], bank.mVariance[0]);
+            }
+        }
+        return logLikelihood;
+    }
+
+    /**
+     * Maximum likelihood {@code {delta, r}} over the grid of all combinations of {@code deltas} and {@code rs}, with
+     * the likelihood summed from step {@code from} on.
+     */
+    public static double[] fit(double[] x, double[] y, double[] deltas, double[] rs, int from) {
+        check(deltas.length > 0 && rs.length > 0, "empty grid");
+        double[] best = new double[2];
+        double bestLogLikelihood = Double.NEGATIVE_INFINITY;
+        for (double delta : deltas) {
+            for (double r : rs) {
+                double logLikelihood = logLikelihood(x, y, delta, r, from);
+                if (logLikelihood > bestLogLikelihood) {
+                    bestLogLikelihood = logLikelihood;
+                    best[0] = delta;
+                    best[1] = r;
+                }
+            }
+        }
+        return best;
+    }
+
+    public int size() {
+        return mAlpha.length;
+    }
+
+    public double[] getAlpha() {
+        return mAlpha;
+    }
+
+    public double[] getBeta() {
+        return mBeta;
+    }
+
+    /**
+     * Prediction errors of {@code y}.
+     */
+    public double[] getError() {
+        return mError;
+    }
+
+    /**
+     * Variances of the prediction errors.
+     */
+    public double[] getVariance() {
+        return mVariance;
+    }
+
+    /**
+     * Log likelihood of the prices from step {@code from} on.
+     */
+    public double getLogLikelihood(int from) {
+        double logLikelihood = 0;
+        for (int t = from; t < size(); t++) {
+            logLikelihood += logDensity(mError[t], mVariance[t]);
+        }
+        return logLikelihood;
+    }
+
+    /**
+     * Alpha given the whole history.
+     */
+    public double[] getSmoothedAlpha() {
+        smooth();
+        return mSmoothedAlpha;
+    }
+
+    /**
+     * Beta given the whole history.
+     */
+    public double[] getSmoothedBeta() {
+        smooth();
+        return mSmoothedBeta;
+    }
+
+    /**
+     * Rauch-Tung-Striebel pass. With the identity transition the prediction for {@code t + 1} is the filtered state
+     * at {@code t} with covariance {@code P + Q}, so the smoother gain is {@code C = P (P + Q)^-1}.
+     */
+    private void smooth() {
+        if (mSmoothedAlpha != null) {
+            return;
+        }
+        int n = size();
+        double[] alpha = new double[n];
+        double[] beta = new double[n];
+        if (n > 0) {
+            alpha[n - 1] = mAlpha[n - 1];
+            beta[n - 1] = mBeta[n - 1];
+        }
+        for (int t = n - 2; t >= 0; t--) {
+            double p00 = mP00[t];
+            double p01 = mP01[t];
+            double p10 = mP10[t];
+            double p11 = mP11[t];
+            double s00 = p00 + mQ;
+            double s11 = p11 + mQ;
+            double det = s00 * s11 - p01 * p10;
+            double i00 = s11 / det;
+            double i01 = -p01 / det;
+            double i10 = -p10 / det;
+            double i11 = s00 / det;
+            double c00 = p00 * i00 + p01 * i10;
+            double c01 = p00 * i01 + p01 * i11;
+            double c10 = p10 * i00 + p11 * i10;
+            double c11 = p10 * i01 + p11 * i11;
+            double da = alpha[t + 1] - mAlpha[t];
+            double db = beta[t + 1] - mBeta[t];
+            alpha[t] = mAlpha[t] + c00 * da + c01 * db;
+            beta[t] = mBeta[t] + c10 * da + c11 * db;
+        }
+        mSmoothedAlpha = alpha;
+        mSmoothedBeta = beta;
+    }
+
+    private static double logDensity(double error, double variance) {
+        return -0.5 * (Math.log(2 * Math.PI * variance) + error * error / variance);
+    }
+}
@@ -5,7 +5,6 @@ import org.lst.trading.lib.model.Order;
 import org.lst.trading.lib.model.TradingContext;
 import org.lst.trading.lib.series.DoubleSeries;
 import org.lst.trading.lib.series.MultipleDoubleSeries;
-import org.lst.trading.lib.series.TimeSeries;
 import org.lst.trading.lib.util.Util;
 import org.lst.trading.main.strategy.AbstractTradingStrategy;
 import org.slf4j.Logger;
@@ -31,6 +30,8 @@ public class CointegrationTradingStrategy extends AbstractTradingStrategy {
     Order mXOrder;
     Order mYOrder;
 
+    double[] mLastErrors = new double[15];
+
     public CointegrationTradingStrategy(String x, String y) {
         this(1, x, y);
     }
@@ -72,8 +73,8 @@ public class CointegrationTradingStrategy extends AbstractTradingStrategy {
         mModel.add(beta * x + alpha, mContext.getTime());
 
         if (mError.size() > 30) {
-            double[] lastValues = mError.reversedStream().mapToDouble(TimeSeries.Entry::getItem).limit(15).toArray();
-            double sd = Math.sqrt(StatUtils.variance(lastValues));
+            mError.tail(mLastErrors.length).copyTo(mLastErrors, 0);
+            double sd = Math.sqrt(StatUtils.variance(mLastErrors));
 
             if (mYOrder == null && Math.abs(error) > sd) {
                 double value = mReinvest ? mContext.getNetValue() : mContext.getInitialFunds();
@@ -0,0 +1,103 @@
+package io.codera.quant.strategy.meanrevertion;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link ZScoreBank}
+ */
+public class ZScoreBankTest {
+
+  @Test
+  public void pairsMatchRollingRegression() {
+    int lookback = 10;
+    int[] first = {0, 0, 2};
+    int[] second = {1, 2, 1};
+    ZScoreBank bank = new ZScoreBank(lookback, first, second);
+
+    int ticks = 200;
+    double[][] history = new double[3][ticks];
+    double[] prices = {100, 50, 20};
+    Random random = new Random(3);
+    for(int tick = 0; tick < ticks; tick++) {
+      for(int i = 0; i < prices.length; i++) {
+        prices[i] *= 1 + 0.01 * random.nextGaussian();
+        history[i][tick] = prices[i];
+      }
+      bank.update(prices);
+      assertEquals(tick >= lookback * 2 - 1, bank.isReady(0));
+      if(tick < lookback * 2 - 1) {
+        continue;
+      }
+      for(int p = 0; p < first.length; p++) {
+        double[] x = history[first[p]];
+        double[] y = history[second[p]];
+        assertEquals(hedgeRatio(x, y, tick, lookback), bank.getHedgeRatio(p), 1e-9);
+        assertEquals(zScore(x, y, tick, lookback), bank.getZScore(p), 1e-9);
+      }
+    }
+  }
+
+  /**
+   * Slope of the least squares regression of {@code y} on {@code x} with intercept over the {@code lookback} prices
+   * up to {@code tick}.
+   */
+  private static double hedgeRatio(double[] x, double[] y, int tick, int lookback) {
+    double[][] regressors = new double[lookback][];
+    double[] regressand = new double[lookback];
+    for(int i = 0; i < lookback; i++) {
+      regressors[i] = new double[]{x[tick - lookback + 1 + i], 1};
+      regressand[i] = y[tick - lookback + 1 + i];
+    }
+    OLSMultipleLinearRegression ols = new OLSMultipleLinearRegression();
+    ols.setNoIntercept(true);
+    ols.newSampleData(regressand, regressors);
+    return ols.estimateRegressionParameters()[0];
+  }
+
+  /**
+   * Z-score of the spread at {@code tick} among the last {@code lookback} spreads, each with the hedge ratio of its
+   * own tick.
+   */
+  private static double zScore(double[] x, double[] y, int tick, int lookback) {
+    DescriptiveStatistics spreads = new DescriptiveStatistics(lookback);
+    for(int i = tick - lookback + 1; i <= tick; i++) {
+      spreads.addValue(y[i] - hedgeRatio(x, y, i, lookback) * x[i]);
+    }
+    double spread = y[tick] - hedgeRatio(x, y, tick, lookback) * x[tick];
+    return (spread - spreads.getMean()) / spreads.getStandardDeviation();
+  }
+
+  @Test
+  public void parallelUpdateMatchesSequential() {
+    int pairs = 10_000;
+    int[] first = new int[pairs];
+    int[] second = new int[pairs];
+    for(int p = 0; p < pairs; p++) {
+      first[p] = p % 50;
+      second[p] = 50 + p % 37;
+    }
+    ZScoreBank sequential = new ZScoreBank(5, first, second);
+    ZScoreBank parallel = new ZScoreBank(5, first, second);
+    ForkJoinPool pool = new ForkJoinPool(4);
+
+    double[] prices = new double[87];
+    Random random = new Random(5);
+    for(int tick = 0; tick < 30; tick++) {
+      for(int i = 0; i < prices.length; i++) {
+        prices[i] = 50 + random.nextDouble();
+      }
+      sequential.update(prices);
+      parallel.update(prices, pool);
+    }
+    pool.shutdown();
+    for(int p = 0; p < pairs; p++) {
+      assertEquals(sequential.getZScore(p), parallel.getZScore(p), 0);
+    }
+  }
+}
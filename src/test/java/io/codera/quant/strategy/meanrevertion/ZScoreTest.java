@@ -55,9 +55,23 @@ public class ZScoreTest {
     DoubleSeries uso =
         finance.readCsvToDoubleSeriesFromResource("USO.csv", SYMBOLS.get(1));
     ZScore zScore = new ZScore(gld.toArray(), uso.toArray(), LOOKBACK, new MathUtil());
-    assertEquals("Failed", -1.0102216127916113, zScore.get(58.33, 66.35), 0);
-    assertEquals("Failed", -0.9692409006953596, zScore.get(57.73, 67), 0);
-    assertEquals("Failed", -0.9618287583543594, zScore.get(57.99, 66.89), 0);
+    assertEquals("Failed", -1.0102216127916113, zScore.get(58.33, 66.35), 1e-12);
+    assertEquals("Failed", -0.9692409006953596, zScore.get(57.73, 67), 1e-12);
+    assertEquals("Failed", -0.9618287583543594, zScore.get(57.99, 66.89), 1e-12);
+  }
+
+  @Test
+  public void streamingMatchesPrimedHistory() throws IOException, URISyntaxException {
+    YahooFinance finance = new YahooFinance();
+    double[] gld = finance.readCsvToDoubleSeriesFromResource("GLD.csv", SYMBOLS.get(0)).toArray();
+    double[] uso = finance.readCsvToDoubleSeriesFromResource("USO.csv", SYMBOLS.get(1)).toArray();
+    ZScore primed = new ZScore(gld, uso, LOOKBACK, new MathUtil());
+    ZScore streaming = new ZScore(LOOKBACK, new MathUtil());
+    for(int i = 0; i < MINUTES_OF_HISTORY; i++) {
+      assertEquals(0, streaming.get(gld[i], uso[i]), 0);
+    }
+    assertEquals(primed.get(58.33, 66.35), streaming.get(58.33, 66.35), 0);
+    assertEquals(primed.getHedgeRatio(), streaming.getHedgeRatio(), 0);
   }
 
 }
\ No newline at end of file
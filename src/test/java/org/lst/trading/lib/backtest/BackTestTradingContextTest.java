@@ -0,0 +1,49 @@
+package org.lst.trading.lib.backtest;
+
+import io.codera.quant.exception.PriceNotAvailableException;
+import java.time.Instant;
+import org.junit.Test;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link BackTestTradingContext}
+ */
+public class BackTestTradingContextTest {
+
+  private static final Instant CLOSE = Instant.parse("2017-01-04T13:00:00Z");
+
+  private static DoubleSeries series(String name, double... values) {
+    DoubleSeries series = new DoubleSeries(name);
+    for (int i = 0; i < values.length; i++) {
+      series.add(values[i], CLOSE.plusSeconds(60 * (i - 1)));
+    }
+    return series;
+  }
+
+  @Test(expected = PriceNotAvailableException.class)
+  public void noChangeBeforeClose() throws PriceNotAvailableException {
+    BackTestTradingContext context = new BackTestTradingContext();
+    MultipleDoubleSeries prices = new MultipleDoubleSeries(series("SPY", 100, 101, 102));
+    context.initialize(prices);
+
+    context.setRow(0, prices.getEpochNanos(0));
+    context.getChangeBySymbol("SPY");
+  }
+
+  @Test
+  public void closePricesRecordedForEveryInstrument() throws PriceNotAvailableException {
+    BackTestTradingContext context = new BackTestTradingContext();
+    MultipleDoubleSeries prices = new MultipleDoubleSeries(series("SPY", 100, 200, 202), series("VOO", 10, 20, 19));
+    context.initialize(prices);
+
+    for (int row = 0; row < prices.size(); row++) {
+      context.setRow(row, prices.getEpochNanos(row));
+    }
+
+    assertEquals(1, context.getChangeBySymbol("SPY"), 0);
+    assertEquals(-5, context.getChangeBySymbol("VOO"), 0);
+  }
+}
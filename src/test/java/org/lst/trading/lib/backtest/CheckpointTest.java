@@ -0,0 +1,123 @@
+package org.lst.trading.lib.backtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BackTest} checkpoints
+ */
+public class CheckpointTest {
+
+  @Test
+  public void resumedRunMatchesUninterruptedRun() throws Exception {
+    assertResumedRunMatches(0);
+  }
+
+  @Test
+  public void resumedRunKeepsPendingFills() throws Exception {
+    // orders are placed at bar 98 and closed at bar 99, so both fills are pending at the checkpoints
+    assertResumedRunMatches(2);
+  }
+
+  @Test
+  public void checkpointsAppendHistory() throws Exception {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(1000);
+    double[] parameters = {7, 10};
+    BackTest.Result expected = new BackTest(30000, prices)
+        .run(new EveryNthBarStrategy(parameters, context(0)));
+
+    Path file = Files.createTempFile("backtest", ".checkpoint");
+    Files.delete(file);
+    Path history = Checkpoint.historyFile(file);
+    try {
+      crash(prices, parameters, 0, file, null, 550);
+      // every row is written once, not once per checkpoint
+      assertTrue(Files.size(history) < 500 * 24 * 2);
+
+      crash(prices, parameters, 0, file, file, 850);
+      BackTest resumed = new BackTest(30000, prices);
+      BackTest.Result actual = resumed.resume(file, new EveryNthBarStrategy(parameters, context(0)));
+
+      assertEquals(expected.getPl(), actual.getPl(), 1e-9);
+      assertEquals(expected.getOrders().size(), actual.getOrders().size());
+      assertArrayEquals(expected.getPlHistory().toArray(), actual.getPlHistory().toArray(), 1e-9);
+      assertArrayEquals(expected.getMarginHistory().toArray(), actual.getMarginHistory().toArray(), 1e-9);
+    } finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(history);
+    }
+  }
+
+  private static BackTestTradingContext context(int fillLatency) {
+    BackTestTradingContext context = new BackTestTradingContext();
+    context.setFillLatency(fillLatency);
+    return context;
+  }
+
+  /**
+   * Runs, or resumes from {@code resumeFrom}, with checkpoints every 100 bars to {@code file} until bar
+   * {@code crashRow}, and checks that the failed run has written its last checkpoint and stopped the writer thread.
+   */
+  private static void crash(MultipleDoubleSeries prices, double[] parameters, int fillLatency, Path file,
+                            Path resumeFrom, int crashRow) throws Exception {
+    BackTest crashing = new BackTest(30000, prices);
+    crashing.setCheckpoint(file, 100);
+    EveryNthBarStrategy strategy = new EveryNthBarStrategy(parameters, context(fillLatency)) {
+      @Override
+      public void onTick() {
+        if (crashing.mRow == crashRow) {
+          throw new IllegalStateException("crash");
+        }
+        super.onTick();
+      }
+    };
+    try {
+      if (resumeFrom == null) {
+        crashing.run(strategy);
+      } else {
+        crashing.resume(resumeFrom, strategy);
+      }
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("crash", e.getMessage());
+    }
+    assertNull(crashing.mCheckpointWriter);
+    assertNull(crashing.mPendingCheckpoint);
+    assertTrue(Files.exists(file));
+  }
+
+  private static void assertResumedRunMatches(int fillLatency) throws Exception {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(1000);
+    double[] parameters = {7, 10};
+    BackTest.Result expected = new BackTest(30000, prices)
+        .run(new EveryNthBarStrategy(parameters, context(fillLatency)));
+
+    Path file = Files.createTempFile("backtest", ".checkpoint");
+    Files.delete(file);
+    try {
+      crash(prices, parameters, fillLatency, file, null, 550);
+
+      BackTest resumed = new BackTest(30000, prices);
+      BackTest.Result actual = resumed.resume(file, new EveryNthBarStrategy(parameters, context(fillLatency)));
+
+      assertEquals(expected.getPl(), actual.getPl(), 1e-9);
+      assertEquals(expected.getCommissions(), actual.getCommissions(), 1e-9);
+      assertEquals(expected.getOrders().size(), actual.getOrders().size());
+      assertEquals(expected.getSharpe(), actual.getSharpe(), 1e-12);
+      assertEquals(expected.getStatistics().getWinRate(), actual.getStatistics().getWinRate(), 0);
+      assertArrayEquals(expected.getPlHistory().toArray(), actual.getPlHistory().toArray(), 1e-9);
+      assertArrayEquals(expected.getMarginHistory().toArray(), actual.getMarginHistory().toArray(), 1e-9);
+    } finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(Checkpoint.historyFile(file));
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package org.lst.trading.lib.backtest;
+
+import io.codera.quant.context.TradingContext;
+import io.codera.quant.exception.NoOrderAvailable;
+import io.codera.quant.exception.PriceNotAvailableException;
+import io.codera.quant.strategy.AbstractStrategy;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Buys {@code p[1]} shares every {@code p[0]} bars and sells them on the next bar.
+ */
+class EveryNthBarStrategy extends AbstractStrategy implements Checkpointable {
+  private final int period;
+  private final int amount;
+  private int bar;
+
+  EveryNthBarStrategy(double[] parameters, TradingContext tradingContext) {
+    super(tradingContext);
+    period = (int) parameters[0];
+    amount = (int) parameters[1];
+  }
+
+  @Override
+  public void onTick() {
+    try {
+      if (bar++ % period == 0) {
+        openPosition();
+      } else if (bar % period == 2) {
+        closePosition();
+      }
+    } catch (PriceNotAvailableException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void openPosition() throws PriceNotAvailableException {
+    tradingContext.order("SPY", true, amount);
+  }
+
+  @Override
+  public void closePosition() throws PriceNotAvailableException {
+    try {
+      tradingContext.close(tradingContext.getLastOrderBySymbol("SPY"));
+    } catch (NoOrderAvailable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    out.writeInt(bar);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    bar = in.readInt();
+  }
+
+  @Override
+  public int getLotSize(String contract, boolean buy) {
+    return amount;
+  }
+}
@@ -0,0 +1,185 @@
+package org.lst.trading.lib.backtest;
+
+import io.codera.quant.exception.NoOrderAvailable;
+import java.time.Instant;
+import org.junit.Test;
+import org.lst.trading.lib.model.ClosedOrder;
+import org.lst.trading.lib.model.Order;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link MarketFillModel} and fill latency in {@link BackTestTradingContext}
+ */
+public class MarketFillModelTest {
+
+  @Test
+  public void spreadAndSlippageCostBothSides() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(100);
+    double[] spy = prices.getColumn(0).toArray();
+    MarketFillModel fillModel = new MarketFillModel();
+    fillModel.setSpread(0.001);
+    fillModel.setSlippage(0.01);
+    BackTestTradingContext context = new BackTestTradingContext();
+    context.setFillModel(fillModel);
+
+    BackTest.Result result = new BackTest(30000, prices).run(new EveryNthBarStrategy(new double[]{5, 10}, context));
+
+    assertFalse(result.getOrders().isEmpty());
+    for (ClosedOrder order : result.getOrders()) {
+      assertEquals(spy[row(order.getOpenInstant())] * 1.0005 + 0.01, order.getOpenPrice(), 1e-9);
+      assertEquals(spy[row(order.getCloseInstant())] * 0.9995 - 0.01, order.getClosePrice(), 1e-9);
+    }
+    BackTest.Result immediate = new BackTest(30000, prices)
+        .run(new EveryNthBarStrategy(new double[]{5, 10}, new BackTestTradingContext()));
+    assertEquals(immediate.getOrders().size(), result.getOrders().size());
+    assertEquals(immediate.getPl() - spreadCost(immediate, 0.001, 0.01), result.getPl(), 1e-9);
+  }
+
+  @Test
+  public void latencyFillsAtLaterBar() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(100);
+    double[] spy = prices.getColumn(0).toArray();
+    BackTestTradingContext context = new BackTestTradingContext();
+    context.setFillLatency(2);
+
+    BackTest.Result result = new BackTest(30000, prices).run(new EveryNthBarStrategy(new double[]{5, 10}, context));
+
+    // orders placed at bars 0, 5, ... and closed one bar later fill two bars after that
+    assertEquals(20, result.getOrders().size());
+    for (ClosedOrder order : result.getOrders()) {
+      int row = row(order.getOpenInstant());
+      assertEquals(2, row % 5);
+      assertEquals(row + 1, row(order.getCloseInstant()));
+      assertEquals(spy[row], order.getOpenPrice(), 0);
+      assertEquals(spy[row + 1], order.getClosePrice(), 0);
+    }
+    // nothing is booked before the fill
+    double[] pl = result.getPlHistory().toArray();
+    assertEquals(0, pl[0], 0);
+    assertEquals(0, pl[1], 0);
+    assertEquals(-1, pl[2], 1e-12);
+  }
+
+  @Test
+  public void pendingOrdersAtEndAreDropped() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(100);
+    BackTestTradingContext context = new BackTestTradingContext();
+    context.setFillLatency(3);
+
+    // the last order is placed at bar 98 and would fill after the last bar
+    BackTest.Result result = new BackTest(30000, prices).run(new EveryNthBarStrategy(new double[]{7, 10}, context));
+
+    assertEquals(14, result.getOrders().size());
+    assertTrue(context.mOrders.isEmpty());
+    assertTrue(context.mPendingFills.isEmpty());
+  }
+
+  @Test
+  public void participationLimitsFilledAmount() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(100);
+    DoubleSeries volume = new DoubleSeries("SPY");
+    for (int i = 0; i < prices.size(); i++) {
+      volume.add(i % 2 == 0 ? 500 : 5000, prices.getEpochNanos(i));
+    }
+    MarketFillModel fillModel = new MarketFillModel();
+    fillModel.setVolumes(new MultipleDoubleSeries(volume));
+    fillModel.setParticipation(0.1);
+    fillModel.setImpact(0.01);
+    BackTestTradingContext context = new BackTestTradingContext();
+    context.setFillModel(fillModel);
+
+    BackTest.Result result = new BackTest(30000, prices).run(new EveryNthBarStrategy(new double[]{5, 300}, context));
+
+    double[] spy = prices.getColumn(0).toArray();
+    assertFalse(result.getOrders().isEmpty());
+    for (ClosedOrder order : result.getOrders()) {
+      int row = row(order.getOpenInstant());
+      int amount = row % 2 == 0 ? 50 : 300;
+      double volumeAtRow = row % 2 == 0 ? 500 : 5000;
+      assertEquals(amount, order.getAmount());
+      assertEquals(spy[row] * (1 + 0.01 * amount / volumeAtRow), order.getOpenPrice(), 1e-9);
+    }
+  }
+
+  @Test
+  public void misalignedVolumesAreRejected() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(100);
+    DoubleSeries shortVolume = new DoubleSeries("SPY");
+    DoubleSeries shiftedVolume = new DoubleSeries("SPY");
+    for (int i = 0; i < prices.size(); i++) {
+      if (i < prices.size() - 1) {
+        shortVolume.add(1000, prices.getEpochNanos(i));
+      }
+      shiftedVolume.add(1000, prices.getEpochNanos(i) + 1);
+    }
+    MultipleDoubleSeries twoColumns = new MultipleDoubleSeries(prices.getColumn(0), prices.getColumn(0).mul(10));
+
+    for (MultipleDoubleSeries volumes : new MultipleDoubleSeries[]{new MultipleDoubleSeries(shortVolume),
+        new MultipleDoubleSeries(shiftedVolume), twoColumns}) {
+      MarketFillModel fillModel = new MarketFillModel();
+      fillModel.setVolumes(volumes);
+      fillModel.setParticipation(0.1);
+      BackTestTradingContext context = new BackTestTradingContext();
+      context.setFillModel(fillModel);
+      try {
+        new BackTest(30000, prices).run(new EveryNthBarStrategy(new double[]{5, 300}, context));
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void zeroFillOpensNothing() throws Exception {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(2);
+    DoubleSeries volume = new DoubleSeries("SPY");
+    volume.add(5, prices.getEpochNanos(0));
+    volume.add(5000, prices.getEpochNanos(1));
+    MarketFillModel fillModel = new MarketFillModel();
+    fillModel.setVolumes(new MultipleDoubleSeries(volume));
+    fillModel.setParticipation(0.1);
+    BackTestTradingContext context = new BackTestTradingContext();
+    context.setFillModel(fillModel);
+    context.initialize(prices);
+    context.mInitialFunds = 30000;
+    context.mLeverage = 1;
+
+    context.setRow(0, prices.getEpochNanos(0));
+    assertNull(context.order("SPY", true, 100));
+    assertTrue(context.mOrders.isEmpty());
+    assertEquals(0, context.getPl(), 0);
+    try {
+      context.getLastOrderBySymbol("SPY");
+      fail();
+    } catch (NoOrderAvailable expected) {
+    }
+
+    context.setRow(1, prices.getEpochNanos(1));
+    Order order = context.order("SPY", true, 1000);
+    assertEquals(500, order.getAmount());
+    context.close(order);
+    assertEquals(1, context.mClosedOrders.size());
+    assertEquals(1, context.getStatistics().getTradeCount());
+  }
+
+  private static int row(Instant instant) {
+    return (int) ((instant.getEpochSecond() - 1483453800L) / 60);
+  }
+
+  private static double spreadCost(BackTest.Result result, double spread, double slippage) {
+    double cost = 0;
+    for (ClosedOrder order : result.getOrders()) {
+      double amount = Math.abs(order.getAmount());
+      cost += amount * (order.getOpenPrice() * spread / 2 + slippage);
+      cost += amount * (order.getClosePrice() * spread / 2 + slippage);
+    }
+    return cost;
+  }
+}
@@ -0,0 +1,61 @@
+package org.lst.trading.lib.backtest;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.lst.trading.lib.series.DoubleSeries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MonteCarlo}
+ */
+public class MonteCarloTest {
+
+  @Test
+  public void resamplesAreReproducibleAcrossPools() {
+    BackTest backTest = new BackTest(30000, ParameterSweepTest.randomWalk(2000));
+    BackTest.Result result = backTest.run(new EveryNthBarStrategy(new double[]{5, 10}, new BackTestTradingContext()));
+    MonteCarlo monteCarlo = new MonteCarlo(result);
+
+    ForkJoinPool single = new ForkJoinPool(1);
+    ForkJoinPool parallel = new ForkJoinPool(4);
+    MonteCarlo.Report a = monteCarlo.resampleReturns(5000, 20, 42, single);
+    MonteCarlo.Report b = monteCarlo.resampleReturns(5000, 20, 42, parallel);
+    MonteCarlo.Report trades = monteCarlo.resampleTrades(5000, 42, parallel);
+    single.shutdown();
+    parallel.shutdown();
+
+    assertEquals(5000, a.getSharpe().size());
+    assertArrayEquals(a.getSharpe().toArray(), b.getSharpe().toArray(), 0);
+    assertArrayEquals(a.getMaxDrawdown().toArray(), b.getMaxDrawdown().toArray(), 0);
+    assertArrayEquals(a.getReturn().toArray(), b.getReturn().toArray(), 0);
+
+    double[] interval = a.getSharpe().getConfidenceInterval(0.95);
+    assertTrue(interval[0] < interval[1]);
+    assertTrue(a.getMaxDrawdown().getQuantile(1) <= 0);
+
+    // trades are drawn with replacement, so the mean resampled return is the observed return net of commissions
+    double observed = result.getReturn() - result.getCommissions() / result.getInitialFund();
+    assertEquals(observed, trades.getReturn().getMean(), 0.001);
+  }
+
+  @Test
+  public void fullLengthBlocksAreRotations() {
+    BackTest backTest = new BackTest(30000, ParameterSweepTest.randomWalk(500));
+    BackTest.Result result = backTest.run(new EveryNthBarStrategy(new double[]{5, 10}, new BackTestTradingContext()));
+    DoubleSeries accountValue = result.getAccountValueHistory();
+    int bars = accountValue.size() - 1;
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    MonteCarlo.Report report = new MonteCarlo(result).resampleReturns(200, bars, 7, pool);
+    pool.shutdown();
+
+    // every resample replays all returns once, starting at a random bar, so it compounds to the observed return
+    double observed = accountValue.getLast() / accountValue.getValue(0) - 1;
+    for (double value : report.getReturn().toArray()) {
+      assertEquals(observed, value, 1e-12);
+    }
+  }
+}
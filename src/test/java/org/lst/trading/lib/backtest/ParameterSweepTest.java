@@ -0,0 +1,56 @@
+package org.lst.trading.lib.backtest;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.lst.trading.lib.series.DoubleSeries;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ParameterSweep}
+ */
+public class ParameterSweepTest {
+
+  @Test
+  public void parallelRunsMatchSequentialAndAreRanked() {
+    ParameterSweep<double[]> sweep = new ParameterSweep<>(randomWalk(2000), 30000, 1);
+
+    List<double[]> grid = ParameterSweep.grid(new double[]{3, 5, 10, 20}, new double[]{10, 50});
+    assertEquals(8, grid.size());
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    List<ParameterSweep.Run<double[]>> runs =
+        sweep.run(grid, EveryNthBarStrategy::new, pool, BackTest.Result::getPl);
+    pool.shutdown();
+
+    assertEquals(grid.size(), runs.size());
+    for (int i = 0; i < runs.size(); i++) {
+      ParameterSweep.Run<double[]> run = runs.get(i);
+      ParameterSweep.Run<double[]> sequential =
+          sweep.run(run.getParameters(), EveryNthBarStrategy::new, BackTest.Result::getPl);
+      assertEquals(sequential.getResult().getPl(), run.getResult().getPl(), 0);
+      assertEquals(sequential.getResult().getOrders().size(), run.getResult().getOrders().size());
+      if (i > 0) {
+        assertTrue(runs.get(i - 1).getScore() >= run.getScore());
+      }
+    }
+    assertTrue(ParameterSweep.toTable(runs, Arrays::toString).startsWith("rank,parameters"));
+  }
+
+  static MultipleDoubleSeries randomWalk(int bars) {
+    DoubleSeries spy = new DoubleSeries("SPY");
+    Random random = new Random(7);
+    double price = 100;
+    for (int i = 0; i < bars; i++) {
+      price *= 1 + 0.01 * random.nextGaussian();
+      spy.add(price, Instant.ofEpochSecond(1483453800L + 60 * i));
+    }
+    return new MultipleDoubleSeries(spy);
+  }
+}
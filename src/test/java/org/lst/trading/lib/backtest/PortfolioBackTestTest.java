@@ -0,0 +1,88 @@
+package org.lst.trading.lib.backtest;
+
+import java.util.List;
+import org.junit.Test;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PortfolioBackTest}
+ */
+public class PortfolioBackTestTest {
+
+  @Test
+  public void subAccountsMatchSeparateBackTests() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(1000);
+    double[][] parameters = {{3, 10}, {5, 50}, {10, 20}};
+
+    PortfolioBackTest portfolio = new PortfolioBackTest(prices);
+    for (double[] p : parameters) {
+      portfolio.add(new EveryNthBarStrategy(p, new BackTestTradingContext()), 10000);
+    }
+    PortfolioBackTest.Result result = portfolio.run();
+
+    List<BackTest.Result> results = result.getResults();
+    double[] aggregatePl = new double[prices.size()];
+    double pl = 0;
+    for (int k = 0; k < parameters.length; k++) {
+      BackTest.Result expected = new BackTest(10000, prices)
+          .run(new EveryNthBarStrategy(parameters[k], new BackTestTradingContext()));
+      BackTest.Result actual = results.get(k);
+      assertEquals(expected.getPl(), actual.getPl(), 0);
+      assertEquals(expected.getOrders().size(), actual.getOrders().size());
+      assertArrayEquals(expected.getPlHistory().toArray(), actual.getPlHistory().toArray(), 0);
+      assertArrayEquals(expected.getMarginHistory().toArray(), actual.getMarginHistory().toArray(), 0);
+      for (int i = 0; i < aggregatePl.length; i++) {
+        aggregatePl[i] += actual.getPlHistory().getValue(i);
+      }
+      pl += actual.getPl();
+    }
+
+    BackTest.Result aggregate = result.getResult();
+    assertEquals(pl, aggregate.getPl(), 1e-9);
+    assertEquals(30000, aggregate.getInitialFund(), 0);
+    assertArrayEquals(aggregatePl, aggregate.getPlHistory().toArray(), 1e-9);
+  }
+
+  @Test
+  public void exhaustedSubAccountStopsAlone() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(1000);
+    double[][] parameters = {{3, 10}, {5, 50}, {10, 20}};
+    // 50 shares at about 100 each: the second account runs out of funds once the price has risen enough
+    double[] deposits = {10000, 6000, 10000};
+
+    PortfolioBackTest portfolio = new PortfolioBackTest(prices);
+    for (int k = 0; k < parameters.length; k++) {
+      portfolio.add(new EveryNthBarStrategy(parameters[k], new BackTestTradingContext()), deposits[k]);
+    }
+    PortfolioBackTest.Result result = portfolio.run();
+
+    BackTest.Result expected = new BackTest(deposits[1], prices)
+        .run(new EveryNthBarStrategy(parameters[1], new BackTestTradingContext()));
+    BackTest.Result stopped = result.getResults().get(1);
+    int stopRow = expected.getPlHistory().size() - 1;
+    assertTrue(stopRow > 100 && stopRow < prices.size() - 100);
+    assertEquals(expected.getPl(), stopped.getPl(), 0);
+    assertEquals(expected.getOrders().size(), stopped.getOrders().size());
+    assertArrayEquals(expected.getPlHistory().toArray(), stopped.getPlHistory().toArray(), 0);
+    assertArrayEquals(expected.getMarginHistory().toArray(), stopped.getMarginHistory().toArray(), 0);
+
+    BackTest.Result first = result.getResults().get(0);
+    BackTest.Result third = result.getResults().get(2);
+    assertEquals(prices.size(), first.getPlHistory().size());
+    assertEquals(prices.size(), third.getPlHistory().size());
+    BackTest.Result aggregate = result.getResult();
+    // the histories are net of commissions, the closed P/L of a result is not
+    double finalPl = stopped.getPl() - stopped.getCommissions();
+    for (int i = stopRow + 1; i < prices.size(); i++) {
+      double others = first.getPlHistory().getValue(i) + third.getPlHistory().getValue(i);
+      assertEquals(others + finalPl, aggregate.getPlHistory().getValue(i), 1e-9);
+      double otherFunds = first.getMarginHistory().getValue(i) + third.getMarginHistory().getValue(i);
+      assertEquals(otherFunds + deposits[1] + finalPl, aggregate.getMarginHistory().getValue(i), 1e-9);
+    }
+    assertEquals(first.getPl() + stopped.getPl() + third.getPl(), aggregate.getPl(), 1e-9);
+  }
+}
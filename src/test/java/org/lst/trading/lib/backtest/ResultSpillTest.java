@@ -0,0 +1,92 @@
+package org.lst.trading.lib.backtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.lst.trading.lib.model.ClosedOrder;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ResultSpill}
+ */
+public class ResultSpillTest {
+
+  @Test
+  public void spilledResultMatchesInMemoryResult() throws Exception {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(10000);
+    double[] parameters = {5, 10};
+    BackTest.Result expected = new BackTest(30000, prices)
+        .run(new EveryNthBarStrategy(parameters, new BackTestTradingContext()));
+
+    Path directory = Files.createTempDirectory("spill");
+    try {
+      BackTest backTest = new BackTest(30000, prices);
+      backTest.setSpillDirectory(directory);
+      BackTest.Result actual = backTest.run(new EveryNthBarStrategy(parameters, new BackTestTradingContext()));
+
+      assertEquals(expected.getPl(), actual.getPl(), 0);
+      assertEquals(expected.getCommissions(), actual.getCommissions(), 0);
+      assertEquals(expected.getDaysCount(), actual.getDaysCount());
+      assertEquals(expected.getSharpe(), actual.getSharpe(), 1e-9);
+      assertEquals(expected.getMaxDrawdown(), actual.getMaxDrawdown(), 0);
+      assertEquals(expected.getMaxDrawdownPercent(), actual.getMaxDrawdownPercent(), 0);
+      assertArrayEquals(expected.getPlHistory().toArray(), actual.getPlHistory().toArray(), 0);
+      assertArrayEquals(expected.getMarginHistory().toArray(), actual.getMarginHistory().toArray(), 0);
+      assertEquals(expected.getPlHistory().getInstant(9999), actual.getPlHistory().getInstant(9999));
+
+      List<ClosedOrder> orders = actual.getOrders();
+      assertEquals(expected.getOrders().size(), orders.size());
+      for (int i = 0; i < orders.size(); i++) {
+        ClosedOrder order = orders.get(i);
+        assertEquals(expected.getOrders().get(i).getId(), order.getId());
+        assertEquals("SPY", order.getInstrument());
+        assertEquals(expected.getOrders().get(i).getOpenInstant(), order.getOpenInstant());
+        assertEquals(expected.getOrders().get(i).getCloseInstant(), order.getCloseInstant());
+        assertEquals(expected.getOrders().get(i).getPl(), order.getPl(), 0);
+      }
+    } finally {
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void failedRunDeletesSpillFiles() throws Exception {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(10000);
+    Path directory = Files.createTempDirectory("spill");
+    try {
+      BackTest backTest = new BackTest(30000, prices);
+      backTest.setSpillDirectory(directory);
+      try {
+        backTest.run(new EveryNthBarStrategy(new double[]{5, 10}, new BackTestTradingContext()) {
+          @Override
+          public void onTick() {
+            if (backTest.mRow == 5000) {
+              throw new IllegalStateException("crash");
+            }
+            super.onTick();
+          }
+        });
+        fail();
+      } catch (IllegalStateException e) {
+        assertEquals("crash", e.getMessage());
+      }
+
+      try (Stream<Path> files = Files.list(directory)) {
+        assertEquals(0, files.count());
+      }
+    } finally {
+      Files.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package org.lst.trading.lib.backtest;
+
+import org.junit.Test;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link VectorizedBackTest}
+ */
+public class VectorizedBackTestTest {
+
+  @Test
+  public void matchesEventDrivenBackTest() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(5000);
+    for (double[] parameters : new double[][]{{5, 10}, {7, 300}, {10, 50}}) {
+      BackTest.Result expected = new BackTest(30000, prices)
+          .run(new EveryNthBarStrategy(parameters, new BackTestTradingContext()));
+      BackTest.Result actual = new VectorizedBackTest(30000, prices).run(new int[][]{positions(parameters, 5000)});
+
+      assertEquals(expected.getPl(), actual.getPl(), 1e-9);
+      assertEquals(expected.getCommissions(), actual.getCommissions(), 1e-9);
+      assertEquals(expected.getOrders().size(), actual.getOrders().size());
+      assertEquals(expected.getSharpe(), actual.getSharpe(), 1e-9);
+      assertArrayEquals(expected.getPlHistory().toArray(), actual.getPlHistory().toArray(), 1e-9);
+      assertArrayEquals(expected.getMarginHistory().toArray(), actual.getMarginHistory().toArray(), 1e-9);
+    }
+  }
+
+  @Test
+  public void flippingPositionClosesBeforeOpening() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(3);
+    BackTest.Result result = new VectorizedBackTest(30000, prices).run(new int[][]{{100, -100, -100}});
+
+    double[] spy = prices.getColumn(0).toArray();
+    assertEquals(2, result.getOrders().size());
+    assertEquals(100 * (spy[1] - spy[0]) - 100 * (spy[2] - spy[1]), result.getPl(), 1e-9);
+    assertEquals(4, result.getCommissions(), 0);
+  }
+
+  /**
+   * Positions {@link EveryNthBarStrategy} holds after each bar.
+   */
+  private static int[] positions(double[] parameters, int bars) {
+    int period = (int) parameters[0];
+    int amount = (int) parameters[1];
+    int[] positions = new int[bars];
+    int position = 0;
+    for (int bar = 0; bar < bars; bar++) {
+      if (bar % period == 0) {
+        position = amount;
+      } else if ((bar + 1) % period == 2) {
+        position = 0;
+      }
+      positions[bar] = position;
+    }
+    return positions;
+  }
+}
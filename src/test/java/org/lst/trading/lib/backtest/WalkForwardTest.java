@@ -0,0 +1,47 @@
+package org.lst.trading.lib.backtest;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.lst.trading.lib.series.MultipleDoubleSeries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link WalkForward}
+ */
+public class WalkForwardTest {
+
+  @Test
+  public void stitchesOutOfSampleWindows() {
+    MultipleDoubleSeries prices = ParameterSweepTest.randomWalk(1000);
+    List<double[]> grid = ParameterSweep.grid(new double[]{3, 5, 10}, new double[]{10, 50});
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    WalkForward.Report<double[]> report = new WalkForward<double[]>(prices, 30000, 1, 300, 200)
+        .run(grid, EveryNthBarStrategy::new, pool, BackTest.Result::getPl);
+    pool.shutdown();
+
+    List<WalkForward.Window<double[]>> windows = report.getWindows();
+    assertEquals(4, windows.size());
+    assertEquals(100, windows.get(3).getTestLength());
+
+    double pl = 0;
+    double lastPl = 0;
+    for (WalkForward.Window<double[]> window : windows) {
+      ParameterSweep.Run<double[]> best = new ParameterSweep<double[]>(
+          prices.window(window.getTrainOffset(), 300), 30000, 1)
+          .run(grid, EveryNthBarStrategy::new, ForkJoinPool.commonPool(), BackTest.Result::getPl).get(0);
+      assertArrayEquals(best.getParameters(), window.getParameters(), 0);
+      lastPl = pl + window.getTestResult().getPlHistory().getLast();
+      pl += window.getTestResult().getPl();
+    }
+
+    BackTest.Result result = report.getResult();
+    assertEquals(pl, result.getPl(), 1e-9);
+    assertEquals(700, result.getPlHistory().size());
+    assertEquals(prices.getEpochNanos(300), result.getPlHistory().getEpochNanos(0));
+    assertEquals(lastPl, result.getPlHistory().getLast(), 1e-9);
+  }
+}
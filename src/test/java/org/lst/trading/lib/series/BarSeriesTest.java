@@ -0,0 +1,43 @@
+package org.lst.trading.lib.series;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.lst.trading.lib.csv.CsvReader;
+import org.lst.trading.lib.model.Bar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.lst.trading.lib.csv.CsvReader.ParseFunction.doubleColumn;
+import static org.lst.trading.lib.csv.CsvReader.ParseFunction.instantColumn;
+import static org.lst.trading.lib.csv.CsvReader.ParseFunction.longColumn;
+
+/**
+ * Tests for {@link BarSeries}
+ */
+public class BarSeriesTest {
+
+  @Test
+  public void parseStoresColumns() {
+    Stream<String> lines = Stream.of(
+        "Date,Open,High,Low,Close,Volume",
+        "2017-01-03T14:30:00Z,10,12,9,11,100",
+        "2017-01-03T14:31:00Z,11,13,10,12,200",
+        "2017-01-03T14:32:00Z,12,12.5,11,11.5,300");
+
+    BarSeries bars = CsvReader.parse("SPY", lines, doubleColumn("Open"), doubleColumn("High"), doubleColumn("Low"),
+        doubleColumn("Close"), longColumn("Volume"), instantColumn("Date", DateTimeFormatter.ISO_INSTANT));
+
+    assertEquals(3, bars.size());
+    assertArrayEquals(new double[]{12, 13, 12.5}, bars.getHigh().toArray(), 0);
+    assertArrayEquals(new double[]{9, 10, 11}, bars.getLow().toArray(), 0);
+    assertEquals("SPY.close", bars.getClose().getName());
+    assertEquals(200, bars.getVolume(1));
+
+    Bar bar = bars.get(2).getItem();
+    assertEquals(Instant.parse("2017-01-03T14:32:00Z"), bar.getStart());
+    assertEquals(11.5, bar.getClose(), 0);
+    assertEquals(11.75, bar.getAverage(), 0);
+  }
+}
@@ -0,0 +1,183 @@
+package org.lst.trading.lib.series;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DoubleSeries}
+ */
+public class DoubleSeriesTest {
+
+  private static final Instant START = Instant.parse("2017-01-03T14:30:00Z");
+
+  private static DoubleSeries series(String name, double... values) {
+    DoubleSeries series = new DoubleSeries(name);
+    for (int i = 0; i < values.length; i++) {
+      series.add(values[i], START.plusSeconds(60 * i));
+    }
+    return series;
+  }
+
+  @Test
+  public void addAndGet() {
+    DoubleSeries series = series("SPY", 1, 2, 3);
+
+    assertEquals(3, series.size());
+    assertEquals(START.plusSeconds(60), series.get(1).getInstant());
+    assertEquals(2, series.get(1).getItem(), 0);
+    assertEquals(3, series.getLast(), 0);
+    assertArrayEquals(new double[]{3, 2, 1},
+        series.reversedStream().mapToDouble(TimeSeries.Entry::getItem).toArray(), 0);
+  }
+
+  @Test
+  public void sharedValuesReturnsBackingStorage() {
+    DoubleSeries series = series("SPY", 1, 2, 3);
+
+    double[] values = series.sharedValues();
+    assertArrayEquals(new double[]{1, 2, 3}, values, 0);
+    assertSame(values, series.sharedValues());
+
+    series.add(4, START.plusSeconds(180));
+    assertArrayEquals(new double[]{1, 2, 3}, values, 0);
+    assertArrayEquals(new double[]{1, 2, 3, 4}, series.sharedValues(), 0);
+  }
+
+  @Test
+  public void toArrayCopies() {
+    DoubleSeries series = series("SPY", 1, 2, 3);
+
+    double[] values = series.toArray();
+    values[0] = 10;
+    assertArrayEquals(new double[]{1, 2, 3}, series.toArray(), 0);
+    assertArrayEquals(new double[]{1, 2, 3}, series.sharedValues(), 0);
+  }
+
+  @Test
+  public void lagAndReturns() {
+    DoubleSeries series = series("SPY", 100, 110, 99);
+
+    DoubleSeries lagged = series.lag(1);
+    assertEquals(2, lagged.size());
+    assertEquals(START.plusSeconds(60), lagged.get(0).getInstant());
+    assertEquals(100, lagged.get(0).getItem(), 0);
+
+    assertArrayEquals(new double[]{0.1, -0.1}, series.returns().toArray(), 1e-12);
+  }
+
+  @Test
+  public void mergeKeepsCommonInstants() {
+    DoubleSeries first = series("SPY", 1, 2, 3, 4);
+    DoubleSeries second = new DoubleSeries("VOO");
+    second.add(10, START.plusSeconds(60));
+    second.add(30, START.plusSeconds(180));
+
+    DoubleSeries sum = first.plus(second);
+    assertEquals(2, sum.size());
+    assertEquals(START.plusSeconds(180), sum.get(1).getInstant());
+    assertArrayEquals(new double[]{12, 34}, sum.toArray(), 0);
+  }
+
+  @Test
+  public void viewsShareStorage() {
+    DoubleSeries series = series("SPY", 1, 2, 3, 4, 5);
+
+    DoubleSeries window = series.window(1, 3);
+    assertArrayEquals(new double[]{2, 3, 4}, window.toArray(), 0);
+    assertEquals(START.plusSeconds(60), window.get(0).getInstant());
+
+    DoubleSeries reversed = series.tail(3).reverse();
+    assertEquals(5, reversed.getValue(0), 0);
+    assertEquals(START.plusSeconds(240), reversed.get(0).getInstant());
+    assertTail(series, reversed.toAscending().reverse().reverse(), 3, 4, 5);
+
+    double[] target = new double[2];
+    series.lag(2).tail(2).copyTo(target, 0);
+    assertArrayEquals(new double[]{2, 3}, target, 0);
+  }
+
+  @Test
+  public void addToViewDoesNotTouchSource() {
+    DoubleSeries series = series("SPY", 1, 2, 3, 4);
+    DoubleSeries head = series.head(2);
+
+    head.add(10, START.plusSeconds(120));
+    assertArrayEquals(new double[]{1, 2, 10}, head.toArray(), 0);
+    assertArrayEquals(new double[]{1, 2, 3, 4}, series.toArray(), 0);
+  }
+
+  @Test
+  public void lazyExpressionEvaluatesInOnePass() {
+    DoubleSeries x = series("x", 1, 2, 3, 4, 5);
+    DoubleSeries y = new DoubleSeries("y");
+    y.add(10, START.plusSeconds(60));
+    y.add(20, START.plusSeconds(120));
+    y.add(40, START.plusSeconds(240));
+
+    DoubleSeries result = x.lazy().mul(2).plus(y).div(x.lag(1)).mapToDouble(Math::sqrt).evaluate();
+
+    assertEquals(3, result.size());
+    assertEquals(START.plusSeconds(60), result.get(0).getInstant());
+    assertArrayEquals(new double[]{Math.sqrt(14), Math.sqrt(13), Math.sqrt(50.0 / 4)}, result.toArray(), 1e-12);
+    assertArrayEquals(x.mul(2).plus(y).div(x.lag(1)).toArray(),
+        x.lazy().mul(2).plus(y).div(x.lag(1)).evaluate().toArray(), 0);
+  }
+
+  @Test
+  public void singleTimelineExpressionKeepsOrder() {
+    DoubleSeries reversed = series("SPY", 1, 2, 3).reverse();
+
+    DoubleSeries result = reversed.lazy().mul(2).plus(1).plus(reversed).evaluate();
+
+    assertArrayEquals(new double[]{10, 7, 4}, result.toArray(), 0);
+    assertEquals(START.plusSeconds(120), result.get(0).getInstant());
+    assertArrayEquals(new double[]{4, 3, 2}, reversed.mapToDouble(v -> v + 1).toArray(), 0);
+  }
+
+  @Test
+  public void sharedLeavesEvaluateConcurrently() {
+    DoubleSeries x = series("x", 1, 2, 3, 4);
+    DoubleSeries y = series("y", 10, 20, 30, 40);
+    DoubleExpression shared = x.lazy();
+    DoubleExpression first = shared.mul(y);
+    DoubleExpression second = y.lazy().div(shared);
+
+    boolean correct = IntStream.range(0, 10_000).parallel().allMatch(i -> i % 2 == 0
+        ? Arrays.equals(new double[]{10, 40, 90, 160}, first.evaluate().toArray())
+        : Arrays.equals(new double[]{10, 10, 10, 10}, second.evaluate().toArray()));
+    assertTrue(correct);
+  }
+
+  @Test
+  public void sliceAndSearchByInstant() {
+    DoubleSeries series = series("SPY", 1, 2, 3, 4, 5);
+    Instant between = START.plusSeconds(90);
+
+    DoubleSeries slice = series.slice(between, START.plusSeconds(240));
+    assertArrayEquals(new double[]{3, 4}, slice.toArray(), 0);
+    assertEquals(0, series.slice(START.plusSeconds(240), START).size());
+
+    assertEquals(2, series.indexOf(START.plusSeconds(120)));
+    assertEquals(-1, series.indexOf(between));
+    assertEquals(2, series.floor(between).getItem(), 0);
+    assertEquals(3, series.ceiling(between).getItem(), 0);
+    assertEquals(3, series.floor(START.plusSeconds(120)).getItem(), 0);
+    assertEquals(null, series.floor(START.minusSeconds(1)));
+    assertEquals(null, series.ceiling(START.plusSeconds(241)));
+    assertEquals(4, series.floorIndex(START.plusSeconds(1000)));
+  }
+
+  private static void assertTail(DoubleSeries source, DoubleSeries actual, double... expected) {
+    assertArrayEquals(expected, actual.toArray(), 0);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(source.getEpochNanos(source.size() - expected.length + i), actual.getEpochNanos(i));
+    }
+  }
+}
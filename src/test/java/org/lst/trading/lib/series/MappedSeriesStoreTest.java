@@ -0,0 +1,87 @@
+package org.lst.trading.lib.series;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link MappedSeriesStore}
+ */
+public class MappedSeriesStoreTest {
+
+  private static final Instant START = Instant.parse("2017-01-03T14:30:00Z");
+
+  @Test
+  public void writeAndMapRoundTrip() throws IOException {
+    DoubleSeries spy = new DoubleSeries("SPY");
+    DoubleSeries voo = new DoubleSeries("VOO");
+    for (int i = 0; i < 10_000; i++) {
+      spy.add(100 + i, START.plusSeconds(60 * i));
+      voo.add(200 + i, START.plusSeconds(60 * i));
+    }
+    MultipleDoubleSeries prices = new MultipleDoubleSeries(spy, voo);
+
+    Path file = Files.createTempFile("prices", ".series");
+    try {
+      MappedSeriesStore.write(file, prices);
+      MultipleDoubleSeries mapped = MappedSeriesStore.open(file);
+
+      assertEquals(Arrays.asList("SPY", "VOO"), mapped.getNames());
+      assertEquals(prices.size(), mapped.size());
+      assertEquals(prices.getEpochNanos(9_999), mapped.getEpochNanos(9_999));
+      assertEquals(205, mapped.getValue(5, 1), 0);
+      assertEquals(prices.get(7).getItem(), mapped.get(7).getItem());
+
+      DoubleSeries column = mapped.getColumn("VOO");
+      assertArrayEquals(voo.toArray(), column.toArray(), 0);
+      assertArrayEquals(new double[]{202, 201, 200}, column.head(3).reverse().toArray(), 0);
+      assertArrayEquals(voo.returns().toArray(), column.returns().toArray(), 0);
+      assertEquals(START.plusSeconds(120), column.slice(START.plusSeconds(90), START.plusSeconds(200)).getInstant(0));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void failedWriterDeletesColumnFiles() throws IOException {
+    Path directory = Files.createTempDirectory("store");
+    Path file = directory.resolve("prices.series");
+    // the column file of the last column cannot be opened
+    Path blocker = Files.createDirectory(directory.resolve("prices.series.2.tmp"));
+    try {
+      new MappedSeriesStore.Writer(file, Arrays.asList("SPY", "VOO"));
+      fail();
+    } catch (IOException expected) {
+      try (Stream<Path> files = Files.list(directory)) {
+        assertEquals(Collections.singletonList(blocker), files.collect(toList()));
+      }
+    } finally {
+      Files.delete(blocker);
+      Files.delete(directory);
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void mappedSeriesAreReadOnly() throws IOException {
+    DoubleSeries spy = new DoubleSeries("SPY");
+    spy.add(1, START);
+
+    Path file = Files.createTempFile("prices", ".series");
+    try {
+      MappedSeriesStore.write(file, spy);
+      MappedSeriesStore.open(file).getColumn(0).add(2, START.plusSeconds(60));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
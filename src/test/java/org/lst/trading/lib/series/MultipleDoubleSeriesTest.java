@@ -0,0 +1,142 @@
+package org.lst.trading.lib.series;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.lst.trading.lib.series.TimeSeries.JoinType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MultipleDoubleSeries}
+ */
+public class MultipleDoubleSeriesTest {
+
+  private static final Instant START = Instant.parse("2017-01-03T14:30:00Z");
+
+  private static DoubleSeries series(String name, int[] minutes, double... values) {
+    DoubleSeries series = new DoubleSeries(name);
+    for (int i = 0; i < values.length; i++) {
+      series.add(values[i], START.plusSeconds(60 * minutes[i]));
+    }
+    return series;
+  }
+
+  @Test
+  public void addSeriesKeepsCommonInstants() {
+    DoubleSeries spy = series("SPY", new int[]{0, 1, 2, 3}, 1, 2, 3, 4);
+    DoubleSeries voo = series("VOO", new int[]{1, 2, 3, 4}, 20, 30, 40, 50);
+
+    MultipleDoubleSeries matrix = new MultipleDoubleSeries(spy, voo);
+
+    assertEquals(3, matrix.size());
+    assertEquals(START.plusSeconds(60), matrix.getInstant(0));
+    assertEquals(2, matrix.getValue(0, 0), 0);
+    assertEquals(40, matrix.getValue(2, 1), 0);
+    assertEquals(30, matrix.get(1).getItem().get(1), 0);
+  }
+
+  @Test
+  public void getColumnSharesStorage() {
+    MultipleDoubleSeries matrix = new MultipleDoubleSeries(
+        series("SPY", new int[]{0, 1, 2}, 1, 2, 3),
+        series("VOO", new int[]{0, 1, 2}, 10, 20, 30));
+
+    DoubleSeries voo = matrix.getColumn("VOO");
+    assertEquals("VOO", voo.getName());
+    assertArrayEquals(new double[]{10, 20, 30}, voo.toArray(), 0);
+    assertSame(voo.sharedValues(), matrix.getColumn(1).sharedValues());
+
+    voo.add(40, START.plusSeconds(180));
+    assertEquals(4, voo.size());
+    assertEquals(3, matrix.size());
+    assertEquals(30, matrix.getValue(2, 1), 0);
+  }
+
+  @Test
+  public void getColumnDoesNotCopyMatrix() {
+    MultipleDoubleSeries matrix = new MultipleDoubleSeries(Arrays.asList("SPY", "VOO"));
+    for (int i = 0; i < 20; i++) {
+      matrix.add(Arrays.asList((double) i, 10.0 * i), START.plusSeconds(60 * i));
+    }
+    long[] storage = matrix.mInstants;
+    double[] spy = matrix.mColumns[0];
+
+    DoubleSeries before = matrix.getColumn(1);
+    assertSame(storage, matrix.mInstants);
+    assertSame(spy, matrix.mColumns[0]);
+    assertEquals(20, before.size());
+    assertEquals(190, before.getLast(), 0);
+    assertEquals(20, before.sharedValues().length);
+
+    matrix.add(Arrays.asList(20.0, 200.0), START.plusSeconds(60 * 20));
+    assertSame(storage, matrix.mInstants);
+    assertEquals(20, before.size());
+    assertEquals(21, matrix.getColumn(1).size());
+    assertEquals(200, matrix.getColumn(1).getLast(), 0);
+  }
+
+  @Test
+  public void outerJoinsKeepRows() {
+    DoubleSeries spy = series("SPY", new int[]{0, 1, 3}, 1, 2, 4);
+    DoubleSeries voo = series("VOO", new int[]{1, 2, 4}, 20, 30, 50);
+
+    MultipleDoubleSeries asOf = new MultipleDoubleSeries(Arrays.asList(spy, voo), JoinType.AS_OF);
+    assertEquals(3, asOf.size());
+    assertTrue(Double.isNaN(asOf.getValue(0, 1)));
+    assertEquals(30, asOf.getValue(2, 1), 0);
+
+    MultipleDoubleSeries left = new MultipleDoubleSeries(Arrays.asList(spy, voo), JoinType.LEFT_OUTER);
+    assertEquals(20, left.getValue(1, 1), 0);
+    assertTrue(Double.isNaN(left.getValue(2, 1)));
+
+    MultipleDoubleSeries full = new MultipleDoubleSeries(Arrays.asList(spy, voo), JoinType.FULL_OUTER_FORWARD_FILL);
+    assertEquals(5, full.size());
+    assertEquals(START, full.getInstant(0));
+    assertArrayEquals(new double[]{1, 2, 2, 4, 4}, full.getColumn("SPY").toArray(), 0);
+    assertArrayEquals(new double[]{Double.NaN, 20, 30, 30, 50}, full.getColumn("VOO").toArray(), 0);
+    assertArrayEquals(full.getColumn("VOO").toArray(),
+        new MultipleDoubleSeries(Arrays.asList(voo, spy), JoinType.FULL_OUTER_FORWARD_FILL).getColumn("VOO").toArray(), 0);
+  }
+
+  @Test
+  public void kWayMergeMatchesPairwiseJoins() {
+    Random random = new Random(42);
+    List<DoubleSeries> series = new ArrayList<>();
+    for (int s = 0; s < 3; s++) {
+      DoubleSeries column = new DoubleSeries("S" + s);
+      int minute = random.nextInt(5);
+      for (int i = 0; i < 100_000; i++) {
+        column.add(random.nextDouble(), START.plusSeconds(60 * minute));
+        minute += 1 + random.nextInt(3);
+      }
+      series.add(column);
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (JoinType join : JoinType.values()) {
+      MultipleDoubleSeries expected = new MultipleDoubleSeries(series.subList(0, 1));
+      for (DoubleSeries column : series.subList(1, series.size())) {
+        expected.addSeries(column, join);
+      }
+
+      for (MultipleDoubleSeries actual : Arrays.asList(
+          new MultipleDoubleSeries(series, join), new MultipleDoubleSeries(series, join, pool))) {
+        assertEquals(join.name(), expected.size(), actual.size());
+        assertEquals(expected.getNames(), actual.getNames());
+        for (int c = 0; c < series.size(); c++) {
+          assertArrayEquals(join.name(), expected.getColumn(c).toArray(), actual.getColumn(c).toArray(), 0);
+        }
+        assertEquals(expected.getInstant(expected.size() - 1), actual.getInstant(actual.size() - 1));
+      }
+    }
+    pool.shutdown();
+  }
+}
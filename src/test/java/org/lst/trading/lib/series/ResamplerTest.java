@@ -0,0 +1,55 @@
+package org.lst.trading.lib.series;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link Resampler}
+ */
+public class ResamplerTest {
+
+  private static final Instant START = Instant.parse("2017-01-03T14:30:00Z");
+
+  @Test
+  public void ticksToFiveMinuteBars() {
+    DoubleSeries ticks = new DoubleSeries("SPY");
+    double[] prices = {10, 12, 9, 11, 11.5, 13, 12};
+    int[] seconds = {0, 60, 120, 299, 300, 420, 900};
+    for (int i = 0; i < prices.length; i++) {
+      ticks.add(prices[i], START.plusSeconds(seconds[i]));
+    }
+
+    BarSeries bars = Resampler.resample(ticks, Duration.ofMinutes(5));
+
+    assertEquals(3, bars.size());
+    assertEquals(START, bars.get(0).getInstant());
+    assertEquals(START.plusSeconds(900), bars.get(2).getInstant());
+    assertArrayEquals(new double[]{10, 11.5, 12}, bars.getOpen().toArray(), 0);
+    assertArrayEquals(new double[]{12, 13, 12}, bars.getHigh().toArray(), 0);
+    assertArrayEquals(new double[]{9, 11.5, 12}, bars.getLow().toArray(), 0);
+    assertArrayEquals(new double[]{11, 13, 12}, bars.getClose().toArray(), 0);
+    assertArrayEquals(new double[]{10.5, 12.25, 12}, bars.getWAP().toArray(), 0);
+  }
+
+  @Test
+  public void barsToHourlyBarsWeightByVolume() {
+    BarSeries minutes = new BarSeries("SPY", Duration.ofMinutes(1));
+    long nanos = TimeSeries.toEpochNanos(START);
+    minutes.add(10, 11, 9, 10.5, 100, 10, nanos);
+    minutes.add(10.5, 12, 10, 11, 300, 11, nanos + Duration.ofMinutes(1).toNanos());
+
+    BarSeries hours = Resampler.resample(minutes, Duration.ofHours(1));
+
+    assertEquals(1, hours.size());
+    assertEquals(Instant.parse("2017-01-03T14:00:00Z"), hours.get(0).getInstant());
+    assertEquals(12, hours.getHigh(0), 0);
+    assertEquals(9, hours.getLow(0), 0);
+    assertEquals(11, hours.getClose(0), 0);
+    assertEquals(400, hours.getVolume(0));
+    assertEquals(10.75, hours.getWAP(0), 1e-12);
+  }
+}
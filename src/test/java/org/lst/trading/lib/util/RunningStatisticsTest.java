@@ -0,0 +1,55 @@
+package org.lst.trading.lib.util;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link RunningStatistics}
+ */
+public class RunningStatisticsTest {
+
+  @Test
+  public void matchesBatchStatistics() {
+    Random random = new Random(3);
+    double[] values = new double[5000];
+    double value = 10000;
+    for (int i = 0; i < values.length; i++) {
+      value *= 1 + 0.01 * random.nextGaussian();
+      values[i] = value;
+    }
+
+    RunningStatistics statistics = new RunningStatistics();
+    for (double v : values) {
+      statistics.add(v);
+    }
+
+    double[] drawdown = Statistics.drawdown(values);
+    assertEquals(Statistics.sharpe(Statistics.returns(values)), statistics.getSharpe(), 1e-9);
+    assertEquals(drawdown[0], statistics.getMaxDrawdown(), 0);
+    assertEquals(drawdown[1], statistics.getMaxDrawdownPercent(), 0);
+    assertEquals(values[values.length - 1] / values[0] - 1, statistics.getReturn(), 1e-12);
+    assertEquals(statistics.getAnnualizedReturn() / -drawdown[1], statistics.getCalmar(), 1e-12);
+  }
+
+  @Test
+  public void sortinoAndTrades() {
+    RunningStatistics statistics = new RunningStatistics();
+    statistics.add(100);
+    statistics.add(110);
+    statistics.add(104.5);
+
+    // returns 0.1 and -0.05; the downside deviation is the root mean square of the negative returns
+    assertEquals(0.025 / Math.sqrt(0.05 * 0.05 / 2) * Math.sqrt(250), statistics.getSortino(), 1e-9);
+    assertEquals(104.5 / 110 - 1, statistics.getMaxDrawdownPercent(), 1e-12);
+
+    statistics.addTrade(30);
+    statistics.addTrade(-10);
+    statistics.addTrade(-5);
+    statistics.addTrade(20);
+    assertEquals(4, statistics.getTradeCount());
+    assertEquals(0.5, statistics.getWinRate(), 0);
+    assertEquals(50 / 15., statistics.getProfitFactor(), 1e-12);
+  }
+}
@@ -0,0 +1,85 @@
+package org.lst.trading.main.strategy.kalman;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.la4j.Matrix;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link CointegrationBank}
+ */
+public class CointegrationBankTest {
+
+    @Test
+    public void pairsMatchGenericKalmanFilters() {
+        double delta = 1e-3;
+        double r = 0.5;
+        int[] xColumns = {3, 1, 0, 2, 3};
+        int[] yColumns = {0, 3, 1, 1, 2};
+        CointegrationBank bank = new CointegrationBank(delta, r, xColumns, yColumns);
+        KalmanFilter[] filters = new KalmanFilter[xColumns.length];
+        for (int p = 0; p < filters.length; p++) {
+            filters[p] = new KalmanFilter(2, 1);
+            filters[p].setUpdateMatrix(Matrix.identity(2));
+            filters[p].setState(Matrix.zero(2, 1));
+            filters[p].setStateCovariance(Matrix.zero(2, 2));
+            filters[p].setUpdateCovariance(Matrix.identity(2).multiply(delta / (1 - delta)));
+            filters[p].setMeasurementCovariance(Matrix.constant(1, 1, r));
+        }
+
+        double[] loadings = {1.0, 0.6, 1.4, 0.9};
+        double[] offsets = {12, 40, -5, 25};
+        double[] prices = new double[loadings.length];
+        Random random = new Random(29);
+        double factor = 70;
+        for (int tick = 0; tick < 800; tick++) {
+            factor *= 1 + 0.005 * random.nextGaussian();
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = offsets[i] + loadings[i] * factor + 0.3 * random.nextGaussian();
+            }
+            bank.update(prices);
+            for (int p = 0; p < filters.length; p++) {
+                double x = prices[xColumns[p]];
+                filters[p].setExtractionMatrix(Matrix.from1DArray(1, 2, new double[]{1, x}));
+                filters[p].step(Matrix.constant(1, 1, prices[yColumns[p]]));
+
+                assertEquals(filters[p].getState().get(0, 0), bank.getAlpha(p), 1e-9);
+                assertEquals(filters[p].getState().get(1, 0), bank.getBeta(p), 1e-9);
+                assertEquals(filters[p].getInnovation().get(0, 0), bank.getError(p), 1e-9);
+                assertEquals(filters[p].getInnovationCovariance().get(0, 0), bank.getVariance(p), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void parallelUpdateMatchesSequential() {
+        int pairs = 13_000;
+        int[] xColumns = new int[pairs];
+        int[] yColumns = new int[pairs];
+        for (int p = 0; p < pairs; p++) {
+            xColumns[p] = (7 * p) % 61;
+            yColumns[p] = (13 * p + 5) % 61;
+        }
+        CointegrationBank sequential = new CointegrationBank(1e-3, 0.5, xColumns, yColumns);
+        CointegrationBank parallel = new CointegrationBank(1e-3, 0.5, xColumns, yColumns);
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        double[] prices = new double[61];
+        Random random = new Random(41);
+        for (int tick = 0; tick < 25; tick++) {
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = 20 + 5 * random.nextDouble();
+            }
+            sequential.update(prices);
+            parallel.update(prices, pool);
+        }
+        pool.shutdown();
+        for (int p = 0; p < pairs; p++) {
+            assertEquals(sequential.getAlpha(p), parallel.getAlpha(p), 0);
+            assertEquals(sequential.getBeta(p), parallel.getBeta(p), 0);
+            assertEquals(sequential.getVariance(p), parallel.getVariance(p), 0);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.lst.trading.main.strategy.kalman;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CointegrationHistory}
+ */
+public class CointegrationHistoryTest {
+
+    @Test
+    public void filterMatchesStepping() {
+        double[][] prices = prices(1000, 0.01, new Random(13));
+        CointegrationHistory history = CointegrationHistory.filter(prices[0], prices[1], 1e-4, 1e-3);
+
+        Cointegration coint = new Cointegration(1e-4, 1e-3);
+        double logLikelihood = 0;
+        for (int t = 0; t < history.size(); t++) {
+            coint.step(prices[0][t], prices[1][t]);
+            assertEquals(coint.getAlpha(), history.getAlpha()[t], 0);
+            assertEquals(coint.getBeta(), history.getBeta()[t], 0);
+            assertEquals(coint.getError(), history.getError()[t], 0);
+            assertEquals(coint.getVariance(), history.getVariance()[t], 0);
+            logLikelihood -= 0.5 * (Math.log(2 * Math.PI * coint.getVariance())
+                + coint.getError() * coint.getError() / coint.getVariance());
+        }
+        assertEquals(logLikelihood, history.getLogLikelihood(0), 1e-9 * Math.abs(logLikelihood));
+        assertEquals(history.getLogLikelihood(100),
+            CointegrationHistory.logLikelihood(prices[0], prices[1], 1e-4, 1e-3, 100), 0);
+    }
+
+    @Test
+    public void smoothingTracksBetaBetterThanFiltering() {
+        Random random = new Random(17);
+        int n = 3000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] beta = new double[n];
+        double price = 50;
+        for (int t = 0; t < n; t++) {
+            price *= 1 + 0.01 * random.nextGaussian();
+            beta[t] = 1 + 0.3 * Math.sin(t / 300.0);
+            x[t] = price;
+            y[t] = beta[t] * price + 0.1 * random.nextGaussian();
+        }
+        CointegrationHistory history = CointegrationHistory.filter(x, y, 1e-6, 1e-2);
+
+        double filtered = 0;
+        double smoothed = 0;
+        for (int t = 500; t < n; t++) {
+            filtered += Math.pow(history.getBeta()[t] - beta[t], 2);
+            smoothed += Math.pow(history.getSmoothedBeta()[t] - beta[t], 2);
+        }
+        assertTrue(smoothed < filtered / 2);
+        assertEquals(history.getBeta()[n - 1], history.getSmoothedBeta()[n - 1], 0);
+        assertEquals(history.getAlpha()[n - 1], history.getSmoothedAlpha()[n - 1], 0);
+    }
+
+    @Test
+    public void smoothingMatchesLeastSquaresPosterior() {
+        int n = 60;
+        double delta = 1e-3;
+        double r = 1e-2;
+        double q = delta / (1 - delta);
+        Random random = new Random(3);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double price = 10;
+        for (int t = 0; t < n; t++) {
+            price *= 1 + 0.02 * random.nextGaussian();
+            x[t] = price;
+            y[t] = (1 + 0.01 * t) * price + 0.5 + 0.1 * random.nextGaussian();
+        }
+
+        // Normal equations of the states s[t] = (alpha, beta) at 2t, 2t + 1: the prior s[0] ~ N(0, qI), the steps
+        // s[t + 1] - s[t] ~ N(0, qI) and the observations y[t] = alpha[t] + beta[t] x[t] with variance r.
+        int m = 2 * n;
+        double[][] normal = new double[m][m];
+        double[] rhs = new double[m];
+        for (int t = 0; t < n; t++) {
+            double[] h = {1, x[t]};
+            for (int i = 0; i < 2; i++) {
+                normal[2 * t + i][2 * t + i] += 1 / q;
+                if (t + 1 < n) {
+                    normal[2 * t + i][2 * t + i] += 1 / q;
+                    normal[2 * t + i][2 * t + 2 + i] -= 1 / q;
+                    normal[2 * t + 2 + i][2 * t + i] -= 1 / q;
+                }
+                for (int j = 0; j < 2; j++) {
+                    normal[2 * t + i][2 * t + j] += h[i] * h[j] / r;
+                }
+                rhs[2 * t + i] += h[i] * y[t] / r;
+            }
+        }
+        double[] mean = solve(normal, rhs);
+
+        CointegrationHistory history = CointegrationHistory.filter(x, y, delta, r);
+        for (int t = 0; t < n; t++) {
+            assertEquals(mean[2 * t], history.getSmoothedAlpha()[t], 1e-10);
+            assertEquals(mean[2 * t + 1], history.getSmoothedBeta()[t], 1e-10);
+        }
+    }
+
+    @Test
+    public void fitPicksMaximumLikelihood() {
+        double[][] prices = prices(2000, 0.3, new Random(19));
+        double[] deltas = {1e-6, 1e-4, 1e-2};
+        double[] rs = {1e-3, 1e-2, 1e-1, 1};
+
+        double[] best = CointegrationHistory.fit(prices[0], prices[1], deltas, rs, 200);
+
+        // constant coefficients and a noise variance of 0.09
+        assertArrayEquals(new double[]{1e-6, 1e-1}, best, 0);
+    }
+
+    /**
+     * Gaussian elimination with partial pivoting.
+     */
+    private static double[] solve(double[][] a, double[] b) {
+        int n = b.length;
+        for (int c = 0; c < n; c++) {
+            int pivot = c;
+            for (int i = c + 1; i < n; i++) {
+                if (Math.abs(a[i][c]) > Math.abs(a[pivot][c])) {
+                    pivot = i;
+                }
+            }
+            double[] row = a[c];
+            a[c] = a[pivot];
+            a[pivot] = row;
+            double value = b[c];
+            b[c] = b[pivot];
+            b[pivot] = value;
+            for (int i = c + 1; i < n; i++) {
+                double f = a[i][c] / a[c][c];
+                for (int j = c; j < n; j++) {
+                    a[i][j] -= f * a[c][j];
+                }
+                b[i] -= f * b[c];
+            }
+        }
+        double[] solution = new double[n];
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = b[i];
+            for (int j = i + 1; j < n; j++) {
+                sum -= a[i][j] * solution[j];
+            }
+            solution[i] = sum / a[i][i];
+        }
+        return solution;
+    }
+
+    /**
+     * Random walk x and y = 0.8 x + 3 plus noise of standard deviation {@code noise}.
+     */
+    private static double[][] prices(int n, double noise, Random random) {
+        double[][] prices = new double[2][n];
+        double x = 100;
+        for (int t = 0; t < n; t++) {
+            x *= 1 + 0.01 * random.nextGaussian();
+            prices[0][t] = x;
+            prices[1][t] = 0.8 * x + 3 + noise * random.nextGaussian();
+        }
+        return prices;
+    }
+}
@@ -0,0 +1,43 @@
+package org.lst.trading.main.strategy.kalman;
+
+import java.util.Random;
+import org.junit.Test;
+import org.la4j.Matrix;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link Cointegration}
+ */
+public class CointegrationTest {
+
+    @Test
+    public void matchesGenericKalmanFilter() {
+        double delta = 1e-4;
+        double r = 1e-3;
+        Cointegration coint = new Cointegration(delta, r);
+
+        KalmanFilter filter = new KalmanFilter(2, 1);
+        filter.setUpdateMatrix(Matrix.identity(2));
+        filter.setState(Matrix.zero(2, 1));
+        filter.setStateCovariance(Matrix.zero(2, 2));
+        filter.setUpdateCovariance(Matrix.identity(2).multiply(delta / (1 - delta)));
+        filter.setMeasurementCovariance(Matrix.constant(1, 1, r));
+
+        Random random = new Random(11);
+        double x = 100;
+        for (int i = 0; i < 2000; i++) {
+            x *= 1 + 0.01 * random.nextGaussian();
+            double y = 0.8 * x + 3 + random.nextGaussian();
+
+            coint.step(x, y);
+            filter.setExtractionMatrix(Matrix.from1DArray(1, 2, new double[]{1, x}));
+            filter.step(Matrix.constant(1, 1, y));
+
+            assertEquals(filter.getState().get(0, 0), coint.getAlpha(), 1e-9);
+            assertEquals(filter.getState().get(1, 0), coint.getBeta(), 1e-9);
+            assertEquals(filter.getInnovation().get(0, 0), coint.getError(), 1e-9);
+            assertEquals(filter.getInnovationCovariance().get(0, 0), coint.getVariance(), 1e-9);
+        }
+    }
+}